@@ -27,12 +27,78 @@ CREATE TABLE sensor (
 ) ENGINE=InnoDB;
 
 CREATE TABLE value (
-    id INT AUTO_INCREMENT,
+    id BIGINT AUTO_INCREMENT,
     value DOUBLE,
-    date_time DATETIME,
-    sensor_id INT,
-    CONSTRAINT pk_value PRIMARY KEY (id),
+    date_time DATETIME NOT NULL,
+    sensor_id INT NOT NULL,
+    CONSTRAINT pk_value PRIMARY KEY (sensor_id, date_time, id),
+    KEY idx_value_id (id),
     CONSTRAINT fk_value_sensor FOREIGN KEY (sensor_id)
         REFERENCES sensor(id)
         ON DELETE CASCADE
 ) ENGINE=InnoDB;
+
+CREATE TABLE value_compact (
+    sensor_id INT NOT NULL,
+    ts BIGINT NOT NULL,
+    value DOUBLE NOT NULL,
+    CONSTRAINT pk_value_compact PRIMARY KEY (sensor_id, ts),
+    CONSTRAINT fk_value_compact_sensor FOREIGN KEY (sensor_id)
+        REFERENCES sensor(id)
+        ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+CREATE TABLE value_compact_float (
+    sensor_id INT NOT NULL,
+    ts BIGINT NOT NULL,
+    value FLOAT NOT NULL,
+    CONSTRAINT pk_value_compact_float PRIMARY KEY (sensor_id, ts),
+    CONSTRAINT fk_value_compact_float_sensor FOREIGN KEY (sensor_id)
+        REFERENCES sensor(id)
+        ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+CREATE TABLE value_rollup_minute (
+    sensor_id INT NOT NULL,
+    bucket BIGINT NOT NULL,
+    min_value DOUBLE NOT NULL,
+    max_value DOUBLE NOT NULL,
+    sum_value DOUBLE NOT NULL,
+    nb_values BIGINT NOT NULL,
+    last_value DOUBLE NOT NULL,
+    last_ts BIGINT NOT NULL,
+    CONSTRAINT pk_value_rollup_minute PRIMARY KEY (sensor_id, bucket),
+    CONSTRAINT fk_value_rollup_minute_sensor FOREIGN KEY (sensor_id)
+        REFERENCES sensor(id)
+        ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+CREATE TABLE value_rollup_hour (
+    sensor_id INT NOT NULL,
+    bucket BIGINT NOT NULL,
+    min_value DOUBLE NOT NULL,
+    max_value DOUBLE NOT NULL,
+    sum_value DOUBLE NOT NULL,
+    nb_values BIGINT NOT NULL,
+    last_value DOUBLE NOT NULL,
+    last_ts BIGINT NOT NULL,
+    CONSTRAINT pk_value_rollup_hour PRIMARY KEY (sensor_id, bucket),
+    CONSTRAINT fk_value_rollup_hour_sensor FOREIGN KEY (sensor_id)
+        REFERENCES sensor(id)
+        ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+CREATE TABLE value_rollup_day (
+    sensor_id INT NOT NULL,
+    bucket BIGINT NOT NULL,
+    min_value DOUBLE NOT NULL,
+    max_value DOUBLE NOT NULL,
+    sum_value DOUBLE NOT NULL,
+    nb_values BIGINT NOT NULL,
+    last_value DOUBLE NOT NULL,
+    last_ts BIGINT NOT NULL,
+    CONSTRAINT pk_value_rollup_day PRIMARY KEY (sensor_id, bucket),
+    CONSTRAINT fk_value_rollup_day_sensor FOREIGN KEY (sensor_id)
+        REFERENCES sensor(id)
+        ON DELETE CASCADE
+) ENGINE=InnoDB;
@@ -0,0 +1,213 @@
+package chart;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import config.Config;
+import managers.RollupManager;
+import managers.ValueManager;
+import managers.ValueSeries;
+
+/**
+ * Valeurs dj charges d'un capteur pour le graphique de l'historique, avec les
+ * priodes qu'elles couvrent. Lorsque la priode affiche change, seules les
+ * parties qui ne sont pas encore couvertes sont lues dans la base : tendre une
+ * semaine d'un jour ne cote qu'un jour de valeurs.
+ *
+ * Les valeurs sont conserves sparment pour chaque rsolution (valeurs brutes
+ * et agrgats), celle-ci dpendant de la dure de la priode. Les valeurs
+ * rcentes, qui peuvent encore changer (valeurs reues mais pas encore crites,
+ * agrgat de l'intervalle en cours), ne sont jamais conserves : elles sont
+ * relues  chaque appel. Les mthodes peuvent tre appeles depuis n'importe
+ * quel thread.
+ */
+public class SensorSeriesCache {
+
+  /**
+   * Nombre maximal de valeurs conserves par rsolution : au-del, seules les
+   * valeurs de la dernire priode demande sont gardes.
+   */
+  private static final int MAX_CACHED_VALUES = 2000000;
+
+  /**
+   * Le ValueManager.
+   */
+  private final ValueManager vm;
+
+  /**
+   * L'ID du capteur.
+   */
+  private final long sensorId;
+
+  /**
+   * Valeurs charges par rsolution (cl null pour les valeurs brutes).
+   */
+  private final Map<RollupManager.Resolution, CoveredSeries> byResolution = new HashMap<>();
+
+  /**
+   * Constructeur.
+   *
+   * @param vm       le ValueManager
+   * @param sensorId l'ID du capteur
+   */
+  public SensorSeriesCache(ValueManager vm, long sensorId) {
+    this.vm = vm;
+    this.sensorId = sensorId;
+  }
+
+  /**
+   * Renvoie les valeurs du capteur entre start et end inclus, pour un affichage
+   * sur nbPoints points environ, en ne lisant dans la base que les parties de la
+   * priode qui n'ont pas encore t charges et les valeurs rcentes.
+   *
+   * @param start    le dbut de la priode (en ms)
+   * @param end      la fin de la priode (en ms)
+   * @param nbPoints le nombre de points voulus
+   * @return les valeurs de la priode, tries par date
+   */
+  public synchronized ValueSeries get(long start, long end, int nbPoints) {
+    RollupManager.Resolution resolution = vm.getResolutionFor(end - start, nbPoints);
+    CoveredSeries covered = byResolution.computeIfAbsent(resolution, k -> new CoveredSeries());
+    long stableEnd = getStableEnd(resolution);
+
+    ValueSeries series = new ValueSeries();
+    long cachedEnd = Math.min(end, stableEnd);
+    if (start <= cachedEnd) {
+      // Les priodes lues et couvertes sont alignes sur les intervalles des
+      // agrgats : un intervalle n'est jamais lu en deux morceaux (deux agrgats
+      // partiels) ni deux fois. stableEnd tant une fin d'intervalle, la priode
+      // aligne reste termine.
+      long coveredStart = start;
+      long coveredEnd = cachedEnd;
+      if (resolution != null) {
+        coveredStart = resolution.bucketStart(start);
+        coveredEnd = resolution.bucketStart(cachedEnd) + resolution.getDuration() - 1;
+      }
+
+      for (long[] gap : covered.missing(coveredStart, coveredEnd)) {
+        ValueSeries fetched = vm.findSeriesBySensorBetween(sensorId, new Timestamp(gap[0]), new Timestamp(gap[1]),
+            resolution);
+        covered.add(gap[0], gap[1], fetched);
+      }
+
+      if (covered.series.size() > MAX_CACHED_VALUES) {
+        covered.retain(coveredStart, coveredEnd);
+      }
+      series = covered.series.slice(start, cachedEnd);
+    }
+
+    if (end > stableEnd) {
+      // Valeurs rcentes, relues  chaque fois
+      long tailStart = Math.max(start, stableEnd + 1);
+      series = series.merge(vm.findSeriesBySensorBetween(sensorId, new Timestamp(tailStart), new Timestamp(end),
+          resolution));
+    }
+
+    return series;
+  }
+
+  /**
+   * Renvoie la date jusqu' laquelle les valeurs d'une rsolution ne peuvent
+   * plus changer : les valeurs reues ne sont crites qu'aprs
+   * Config.VALUE_BATCH_DELAY, et l'agrgat de l'intervalle en cours est
+   * complt jusqu' sa fin.
+   *
+   * @param resolution la rsolution (null pour les valeurs brutes)
+   * @return la date (incluse, en ms)
+   */
+  private static long getStableEnd(RollupManager.Resolution resolution) {
+    long stableEnd = System.currentTimeMillis() - Config.VALUE_BATCH_DELAY;
+    if (resolution != null) {
+      stableEnd = resolution.bucketStart(stableEnd) - 1;
+    }
+
+    return stableEnd;
+  }
+
+  /**
+   * Valeurs charges  une rsolution et priodes qu'elles couvrent.
+   */
+  private static class CoveredSeries {
+
+    /**
+     * Valeurs charges, tries par date.
+     */
+    private ValueSeries series = new ValueSeries();
+
+    /**
+     * Priodes couvertes ({dbut, fin} inclus, en ms), tries et disjointes.
+     */
+    private List<long[]> intervals = new ArrayList<>();
+
+    /**
+     * Renvoie les parties d'une priode qui ne sont pas couvertes. Elles ne
+     * chevauchent pas les priodes couvertes.
+     *
+     * @param start le dbut de la priode (en ms)
+     * @param end   la fin de la priode (en ms)
+     * @return les priodes manquantes ({dbut, fin} inclus, en ms)
+     */
+    private List<long[]> missing(long start, long end) {
+      List<long[]> gaps = new ArrayList<>();
+      // Premire date non couverte restant  examiner
+      long cur = start;
+
+      for (long[] interval : intervals) {
+        if (interval[1] < cur) continue;
+        if (interval[0] > end) break;
+        if (interval[0] > cur) {
+          gaps.add(new long[] { cur, interval[0] - 1 });
+        }
+        cur = Math.max(cur, interval[1] + 1);
+      }
+      if (cur <= end) {
+        gaps.add(new long[] { cur, end });
+      }
+
+      return gaps;
+    }
+
+    /**
+     * Ajoute les valeurs lues pour une priode manquante (voir missing). La
+     * priode doit tre termine (voir getStableEnd).
+     *
+     * @param start  le dbut de la priode lue (en ms)
+     * @param end    la fin de la priode lue (en ms)
+     * @param values les valeurs lues, tries par date
+     */
+    private void add(long start, long end, ValueSeries values) {
+      series = series.merge(values);
+
+      // Ajout de la priode puis fusion des priodes qui se touchent
+      intervals.add(new long[] { start, end });
+      intervals.sort((a, b) -> Long.compare(a[0], b[0]));
+      List<long[]> merged = new ArrayList<>();
+      for (long[] interval : intervals) {
+        long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+        if (last != null && interval[0] <= last[1] + 1) {
+          last[1] = Math.max(last[1], interval[1]);
+        } else {
+          merged.add(new long[] { interval[0], interval[1] });
+        }
+      }
+      intervals = merged;
+    }
+
+    /**
+     * Ne conserve que les valeurs d'une priode, suppose couverte.
+     *
+     * @param start le dbut de la priode (en ms)
+     * @param end   la fin de la priode (en ms)
+     */
+    private void retain(long start, long end) {
+      series = series.slice(start, end);
+      intervals = new ArrayList<>();
+      intervals.add(new long[] { start, end });
+    }
+
+  }
+
+}
@@ -0,0 +1,236 @@
+package chart;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractXYDataset;
+
+import managers.ValueSeries;
+
+/**
+ * Donnes du graphique de l'historique : une courbe par capteur, chacune
+ * reposant directement sur une ValueSeries (dates en ms et valeurs dans des
+ * tableaux de types primitifs). Contrairement  une TimeSeries, aucun objet
+ * n'est cr par point, les dates gardent leur prcision  la milliseconde et le
+ * contenu d'une courbe est remplac en une fois, avec une seule notification du
+ * graphique.
+ *
+ * Les bornes des donnes sont calcules au remplacement d'une courbe : le
+ * graphique n'a pas  parcourir tous les points pour ajuster ses axes. Cette
+ * classe doit tre utilise depuis l'EDT, et les ValueSeries qui lui sont
+ * confies ne doivent plus tre modifies.
+ */
+public class SensorSeriesDataset extends AbstractXYDataset implements DomainInfo, RangeInfo {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Cls des courbes (les noms des capteurs), dans l'ordre d'affichage.
+   */
+  private final List<Comparable<?>> keys = new ArrayList<>();
+
+  /**
+   * Valeurs de chaque courbe, dans le mme ordre que les cls.
+   */
+  private final List<ValueSeries> series = new ArrayList<>();
+
+  /**
+   * Bornes des dates de toutes les courbes (null si aucune valeur).
+   */
+  private Range domainBounds;
+
+  /**
+   * Bornes des valeurs de toutes les courbes (null si aucune valeur).
+   */
+  private Range rangeBounds;
+
+  /**
+   * Ajoute une courbe ou remplace les valeurs d'une courbe existante.
+   *
+   * @param key    la cl de la courbe
+   * @param values les valeurs, tries par date
+   */
+  public void setSeries(Comparable<?> key, ValueSeries values) {
+    int index = keys.indexOf(key);
+    if (index < 0) {
+      keys.add(key);
+      series.add(values);
+    } else {
+      series.set(index, values);
+    }
+
+    updateBounds();
+    fireDatasetChanged();
+  }
+
+  /**
+   * Supprime une courbe.
+   *
+   * @param key la cl de la courbe
+   */
+  public void removeSeries(Comparable<?> key) {
+    int index = keys.indexOf(key);
+    if (index < 0) return;
+
+    keys.remove(index);
+    series.remove(index);
+    updateBounds();
+    fireDatasetChanged();
+  }
+
+  /**
+   * Supprime toutes les courbes.
+   */
+  public void removeAllSeries() {
+    keys.clear();
+    series.clear();
+    updateBounds();
+    fireDatasetChanged();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getSeriesCount() {
+    return keys.size();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @SuppressWarnings("rawtypes")
+  @Override
+  public Comparable getSeriesKey(int index) {
+    return keys.get(index);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getItemCount(int index) {
+    return series.get(index).size();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getXValue(int index, int item) {
+    return series.get(index).getTime(item);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getYValue(int index, int item) {
+    return series.get(index).getValue(item);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Number getX(int index, int item) {
+    return series.get(index).getTime(item);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Number getY(int index, int item) {
+    return series.get(index).getValue(item);
+  }
+
+  /**
+   * Les valeurs de chaque courbe sont tries par date, ce qui permet au
+   * graphique de ne parcourir que les points visibles. {@inheritDoc}
+   */
+  @Override
+  public DomainOrder getDomainOrder() {
+    return DomainOrder.ASCENDING;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getDomainLowerBound(boolean includeInterval) {
+    return domainBounds == null ? Double.NaN : domainBounds.getLowerBound();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getDomainUpperBound(boolean includeInterval) {
+    return domainBounds == null ? Double.NaN : domainBounds.getUpperBound();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Range getDomainBounds(boolean includeInterval) {
+    return domainBounds;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getRangeLowerBound(boolean includeInterval) {
+    return rangeBounds == null ? Double.NaN : rangeBounds.getLowerBound();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getRangeUpperBound(boolean includeInterval) {
+    return rangeBounds == null ? Double.NaN : rangeBounds.getUpperBound();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Range getRangeBounds(boolean includeInterval) {
+    return rangeBounds;
+  }
+
+  /**
+   * Recalcule les bornes des dates et des valeurs de toutes les courbes. Les
+   * valeurs tant tries par date, seules les valeurs sont parcourues.
+   */
+  private void updateBounds() {
+    double minX = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+
+    for (ValueSeries values : series) {
+      int size = values.size();
+      if (size == 0) continue;
+
+      minX = Math.min(minX, values.getTime(0));
+      maxX = Math.max(maxX, values.getTime(size - 1));
+      for (int i = 0; i < size; ++i) {
+        double v = values.getValue(i);
+        if (v < minY) minY = v;
+        if (v > maxY) maxY = v;
+      }
+    }
+
+    domainBounds = minX <= maxX ? new Range(minX, maxX) : null;
+    rangeBounds = minY <= maxY ? new Range(minY, maxY) : null;
+  }
+
+}
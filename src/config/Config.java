@@ -2,6 +2,15 @@ package config;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import entities.Fluid;
+import managers.PartitionMaintainer;
+import managers.ValueManager;
+import server.IngestionQueue;
+import server.SensorServer;
 
 /**
  * Stocke les diffrents paramtres configurables de l'application.
@@ -38,6 +47,152 @@ public class Config {
    */
   public static final Color BUTTON_BORDER_COLOR = new Color(38, 31, 242);
 
+  /**
+   * Nombre de rafrachissements par seconde du tableau temps rel (proprit
+   * systme "sensors.table.frameRate", 20 par dfaut).
+   */
+  public static final int TABLE_FRAME_RATE = getIntProperty("sensors.table.frameRate", 20);
+
+  /**
+   * Mode de fonctionnement du serveur des capteurs (proprit systme
+   * "sensors.server.mode" : BLOCKING, VIRTUAL ou NIO, BLOCKING par dfaut).
+   */
+  public static final SensorServer.Mode SERVER_MODE = getEnumProperty("sensors.server.mode",
+      SensorServer.Mode.class, SensorServer.Mode.BLOCKING);
+
+  /**
+   * Nombre de threads de boucle d'vnements en mode NIO (proprit systme
+   * "sensors.server.eventLoops", nombre de processeurs par dfaut).
+   */
+  public static final int SERVER_EVENT_LOOPS = getIntProperty("sensors.server.eventLoops",
+      Runtime.getRuntime().availableProcessors());
+
+  /**
+   * Nombre maximal de messages en attente de traitement entre le serveur et la
+   * base (proprit systme "sensors.queue.capacity", 10000 par dfaut, 0 pour
+   * traiter les messages directement dans les threads de rception).
+   */
+  public static final int QUEUE_CAPACITY = getIntProperty("sensors.queue.capacity", 10000);
+
+  /**
+   * Nombre de threads traitant les messages en attente (proprit systme
+   * "sensors.queue.consumers", 4 par dfaut).
+   */
+  public static final int QUEUE_CONSUMERS = getIntProperty("sensors.queue.consumers", 4);
+
+  /**
+   * Politique applique aux donnes reues lorsque la file est pleine
+   * (proprit systme "sensors.queue.policy" : BLOCK, DROP_OLDEST, DROP_NEWEST
+   * ou SHED_PER_SENSOR, BLOCK par dfaut).
+   */
+  public static final IngestionQueue.OverflowPolicy QUEUE_POLICY = getEnumProperty("sensors.queue.policy",
+      IngestionQueue.OverflowPolicy.class, IngestionQueue.OverflowPolicy.BLOCK);
+
+  /**
+   * Nombre maximal de donnes en attente par capteur avec la politique
+   * SHED_PER_SENSOR (proprit systme "sensors.queue.perSensor", 16 par
+   * dfaut).
+   */
+  public static final int QUEUE_PER_SENSOR_LIMIT = getIntProperty("sensors.queue.perSensor", 16);
+
+  /**
+   * Nombre maximal de connexions ouvertes  la base (proprit systme
+   * "sensors.db.poolSize", 8 par dfaut).
+   */
+  public static final int DB_POOL_SIZE = getIntProperty("sensors.db.poolSize", 8);
+
+  /**
+   * Dure en millisecondes au-del de laquelle une connexion inutilise est
+   * ferme (proprit systme "sensors.db.idleTimeout", 5 minutes par dfaut).
+   */
+  public static final int DB_POOL_IDLE_TIMEOUT = getIntProperty("sensors.db.idleTimeout", 300000);
+
+  /**
+   * Nombre de lignes lues  la fois lors du parcours en flux d'un grand
+   * rsultat (proprit systme "sensors.db.fetchSize", 1000 par dfaut).
+   */
+  public static final int DB_FETCH_SIZE = getIntProperty("sensors.db.fetchSize", 1000);
+
+  /**
+   * Nombre de valeurs par page de l'historique d'un capteur charg  la demande
+   * (proprit systme "sensors.db.pageSize", 1000 par dfaut).
+   */
+  public static final int VALUE_PAGE_SIZE = getIntProperty("sensors.db.pageSize", 1000);
+
+  /**
+   * Nombre maximal de pages de l'historique d'un capteur gardes en mmoire
+   * (proprit systme "sensors.db.pageCache", 8 par dfaut).
+   */
+  public static final int VALUE_PAGE_CACHE = getIntProperty("sensors.db.pageCache", 8);
+
+  /**
+   * Nombre maximal de valeurs insres en une seule requte (proprit systme
+   * "sensors.db.batchSize", 500 par dfaut).
+   */
+  public static final int VALUE_BATCH_SIZE = getIntProperty("sensors.db.batchSize", 500);
+
+  /**
+   * Dlai maximal en millisecondes avant l'insertion d'une valeur reue
+   * (proprit systme "sensors.db.batchDelay", 1000 par dfaut).
+   */
+  public static final int VALUE_BATCH_DELAY = getIntProperty("sensors.db.batchDelay", 1000);
+
+  /**
+   * Format de stockage des valeurs de chaque type de fluide (proprits systme
+   * "sensors.db.layout.TYPE", par exemple "sensors.db.layout.TEMPERATURE" :
+   * STANDARD, COMPACT ou COMPACT_FLOAT, STANDARD par dfaut).
+   */
+  public static final Map<Fluid.Type, ValueManager.Layout> VALUE_LAYOUTS = getValueLayouts();
+
+  /**
+   * Indique si les agrgats par minute, heure et jour sont tenus  jour et
+   * utiliss pour les longues priodes (proprit systme
+   * "sensors.db.rollups", true par dfaut).
+   */
+  public static final boolean ROLLUPS_ENABLED = getBooleanProperty("sensors.db.rollups", true);
+
+  /**
+   * Indique si les agrgats doivent tre recalculs  partir des valeurs
+   * existantes au dmarrage, avant la rception des donnes (proprit systme
+   * "sensors.db.rollupBackfill", false par dfaut).
+   */
+  public static final boolean ROLLUP_BACKFILL = getBooleanProperty("sensors.db.rollupBackfill", false);
+
+  /**
+   * Dure de conservation en jours des valeurs brutes de chaque type de fluide
+   * (proprits systme "sensors.db.retention.TYPE", par exemple
+   * "sensors.db.retention.TEMPERATURE"). Les types sans dure (0 ou absente,
+   * par dfaut) conservent leurs valeurs indfiniment ; les agrgats sont
+   * toujours conservs.
+   */
+  public static final Map<Fluid.Type, Integer> RETENTION_DAYS = getRetentionDays();
+
+  /**
+   * Nombre maximal de valeurs supprimes par requte lors d'une purge
+   * (proprit systme "sensors.db.purgeChunk", 1000 par dfaut).
+   */
+  public static final int PURGE_CHUNK_SIZE = getIntProperty("sensors.db.purgeChunk", 1000);
+
+  /**
+   * Dlai en millisecondes entre deux purges des valeurs expires (proprit
+   * systme "sensors.db.purgeInterval", 1 heure par dfaut).
+   */
+  public static final int PURGE_INTERVAL = getIntProperty("sensors.db.purgeInterval", 3600000);
+
+  /**
+   * Priode de partitionnement de la table value (proprit systme
+   * "sensors.db.partitioning" : NONE, WEEK ou MONTH, NONE par dfaut). La table
+   * doit avoir t partitionne au pralable.
+   */
+  public static final PartitionMaintainer.Period PARTITIONING = getEnumProperty("sensors.db.partitioning",
+      PartitionMaintainer.Period.class, PartitionMaintainer.Period.NONE);
+
+  /**
+   * Nombre de partitions cres  l'avance au-del de la priode en cours
+   * (proprit systme "sensors.db.partitionsAhead", 3 par dfaut).
+   */
+  public static final int PARTITIONS_AHEAD = getIntProperty("sensors.db.partitionsAhead", 3);
+
   /**
    * Renvoie la fonte par dfaut avec la taille dsire.
    *
@@ -48,4 +203,87 @@ public class Config {
     return new Font("Montserrat", Font.PLAIN, pt);
   }
 
+  /**
+   * Lit le format de stockage des valeurs de chaque type de fluide.
+   *
+   * @return le format de chaque type de fluide
+   */
+  private static Map<Fluid.Type, ValueManager.Layout> getValueLayouts() {
+    Map<Fluid.Type, ValueManager.Layout> layouts = new EnumMap<>(Fluid.Type.class);
+    for (Fluid.Type type : Fluid.Type.values()) {
+      layouts.put(type, getEnumProperty("sensors.db.layout." + type.name(), ValueManager.Layout.class,
+          ValueManager.Layout.STANDARD));
+    }
+
+    return Collections.unmodifiableMap(layouts);
+  }
+
+  /**
+   * Lit la dure de conservation des valeurs de chaque type de fluide.
+   *
+   * @return la dure de conservation (en jours) des types concerns
+   */
+  private static Map<Fluid.Type, Integer> getRetentionDays() {
+    Map<Fluid.Type, Integer> retention = new EnumMap<>(Fluid.Type.class);
+    for (Fluid.Type type : Fluid.Type.values()) {
+      int days = getIntProperty("sensors.db.retention." + type.name(), 0);
+      if (days > 0) retention.put(type, days);
+    }
+
+    return Collections.unmodifiableMap(retention);
+  }
+
+  /**
+   * Lit une proprit systme entire.
+   *
+   * @param name         le nom de la proprit
+   * @param defaultValue la valeur si la proprit est absente ou invalide
+   * @return la valeur de la proprit
+   */
+  private static int getIntProperty(String name, int defaultValue) {
+    String value = System.getProperty(name);
+    if (value == null) return defaultValue;
+
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      System.err.println("Proprit \"" + name + "\" invalide : " + value);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Lit une proprit systme boolenne.
+   *
+   * @param name         le nom de la proprit
+   * @param defaultValue la valeur si la proprit est absente
+   * @return la valeur de la proprit
+   */
+  private static boolean getBooleanProperty(String name, boolean defaultValue) {
+    String value = System.getProperty(name);
+    if (value == null) return defaultValue;
+
+    return Boolean.parseBoolean(value.trim());
+  }
+
+  /**
+   * Lit une proprit systme correspondant  une constante d'numration.
+   *
+   * @param name         le nom de la proprit
+   * @param enumClass    la classe de l'numration
+   * @param defaultValue la valeur si la proprit est absente ou invalide
+   * @return la valeur de la proprit
+   */
+  private static <E extends Enum<E>> E getEnumProperty(String name, Class<E> enumClass, E defaultValue) {
+    String value = System.getProperty(name);
+    if (value == null) return defaultValue;
+
+    try {
+      return Enum.valueOf(enumClass, value.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      System.err.println("Proprit \"" + name + "\" invalide : " + value);
+      return defaultValue;
+    }
+  }
+
 }
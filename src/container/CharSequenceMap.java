@@ -0,0 +1,263 @@
+package container;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * Table associant des valeurs  des chanes, dans laquelle on cherche  partir
+ * d'une CharSequence quelconque (une vue sur un tampon de rception par
+ * exemple) : la recherche compare les caractres un  un et ne cre pas de
+ * chane. Seul l'ajout d'une cl en copie une.
+ *
+ * La table est  adressage ouvert (sondage linaire). Les lectures peuvent tre
+ * faites depuis n'importe quel thread sans verrou, mais les modifications
+ * doivent tre srialises par l'appelant.
+ *
+ * @param <V> le type des valeurs
+ */
+public class CharSequenceMap<V> {
+
+  /**
+   * Capacit initiale (puissance de 2).
+   */
+  private static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * Marque d'une case libre par une suppression : la recherche continue au
+   * del.
+   */
+  private static final Entry<Object> REMOVED = new Entry<>("", 0, null);
+
+  /**
+   * Cases de la table, remplace en entier lors d'un agrandissement.
+   */
+  private volatile AtomicReferenceArray<Entry<V>> table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+  /**
+   * Nombre de cls prsentes.
+   */
+  private volatile int size = 0;
+
+  /**
+   * Nombre de cases occupes (cls prsentes et suppressions).
+   */
+  private int used = 0;
+
+  /**
+   * Rcupre la valeur associe  une cl.
+   *
+   * @param key la cl
+   * @return la valeur ou null si la cl est absente
+   */
+  public V get(CharSequence key) {
+    AtomicReferenceArray<Entry<V>> t = table;
+    int hash = hash(key);
+    int mask = t.length() - 1;
+
+    for (int i = spread(hash) & mask;; i = (i + 1) & mask) {
+      Entry<V> entry = t.get(i);
+      if (entry == null) return null;
+      if (entry != REMOVED && entry.hash == hash && contentEquals(entry.key, key)) return entry.value;
+    }
+  }
+
+  /**
+   * Associe une valeur  une cl, en remplaant l'ventuelle valeur prcdente.
+   *
+   * @param key   la cl (copie si ce n'est pas une chane)
+   * @param value la valeur (non null)
+   * @return la valeur prcdente ou null
+   */
+  public V put(CharSequence key, V value) {
+    AtomicReferenceArray<Entry<V>> t = table;
+    int hash = hash(key);
+    int mask = t.length() - 1;
+    int free = -1;
+
+    int i = spread(hash) & mask;
+    for (;; i = (i + 1) & mask) {
+      Entry<V> entry = t.get(i);
+      if (entry == null) break;
+      if (entry == REMOVED) {
+        if (free < 0) free = i;
+      } else if (entry.hash == hash && contentEquals(entry.key, key)) {
+        t.set(i, new Entry<>(entry.key, hash, value));
+        return entry.value;
+      }
+    }
+
+    if (free >= 0) {
+      // On rutilise la premire case libre rencontre
+      i = free;
+    } else {
+      used++;
+    }
+    t.set(i, new Entry<>(key.toString(), hash, value));
+    size++;
+
+    if (used * 2 > t.length()) rehash();
+    return null;
+  }
+
+  /**
+   * Retire une cl.
+   *
+   * @param key la cl
+   * @return la valeur qui lui tait associe ou null
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(CharSequence key) {
+    AtomicReferenceArray<Entry<V>> t = table;
+    int hash = hash(key);
+    int mask = t.length() - 1;
+
+    for (int i = spread(hash) & mask;; i = (i + 1) & mask) {
+      Entry<V> entry = t.get(i);
+      if (entry == null) return null;
+      if (entry != REMOVED && entry.hash == hash && contentEquals(entry.key, key)) {
+        t.set(i, (Entry<V>) REMOVED);
+        size--;
+        return entry.value;
+      }
+    }
+  }
+
+  /**
+   * Retire les cls dont la valeur satisfait une condition.
+   *
+   * @param filter la condition
+   */
+  @SuppressWarnings("unchecked")
+  public void removeIf(Predicate<? super V> filter) {
+    AtomicReferenceArray<Entry<V>> t = table;
+    for (int i = 0; i < t.length(); ++i) {
+      Entry<V> entry = t.get(i);
+      if (entry != null && entry != REMOVED && filter.test(entry.value)) {
+        t.set(i, (Entry<V>) REMOVED);
+        size--;
+      }
+    }
+
+    rehash();
+  }
+
+  /**
+   * Renvoie le nombre de cls prsentes.
+   *
+   * @return le nombre de cls
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Recopie les cls prsentes dans une nouvelle table, dimensionne pour tre
+   * remplie au plus au quart, ce qui limine les suppressions.
+   */
+  private void rehash() {
+    AtomicReferenceArray<Entry<V>> t = table;
+    int capacity = INITIAL_CAPACITY;
+    while (capacity < size * 4) {
+      capacity *= 2;
+    }
+
+    AtomicReferenceArray<Entry<V>> rehashed = new AtomicReferenceArray<>(capacity);
+    int mask = capacity - 1;
+    for (int j = 0; j < t.length(); ++j) {
+      Entry<V> entry = t.get(j);
+      if (entry == null || entry == REMOVED) continue;
+
+      int i = spread(entry.hash) & mask;
+      while (rehashed.get(i) != null) {
+        i = (i + 1) & mask;
+      }
+      rehashed.set(i, entry);
+    }
+
+    used = size;
+    table = rehashed;
+  }
+
+  /**
+   * Calcule le hash d'une cl, gal  celui de la chane correspondante.
+   *
+   * @param key la cl
+   * @return le hash
+   */
+  private static int hash(CharSequence key) {
+    int h = 0;
+    for (int i = 0; i < key.length(); ++i) {
+      h = 31 * h + key.charAt(i);
+    }
+
+    return h;
+  }
+
+  /**
+   * Mlange les bits de poids fort d'un hash dans ceux de poids faible, seuls
+   * utiliss pour choisir la case.
+   *
+   * @param hash le hash
+   * @return le hash mlang
+   */
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * Compare une cl  une CharSequence caractre par caractre.
+   *
+   * @param key   la cl
+   * @param other la squence
+   * @return true si elles contiennent les mmes caractres
+   */
+  private static boolean contentEquals(String key, CharSequence other) {
+    if (key.length() != other.length()) return false;
+
+    for (int i = 0; i < key.length(); ++i) {
+      if (key.charAt(i) != other.charAt(i)) return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Cl et valeur associe. Une case n'est jamais modifie : elle est remplace,
+   * ce qui permet aux lectures sans verrou de toujours voir une cl et sa
+   * valeur cohrentes.
+   *
+   * @param <V> le type de la valeur
+   */
+  private static class Entry<V> {
+
+    /**
+     * La cl.
+     */
+    private final String key;
+
+    /**
+     * Le hash de la cl.
+     */
+    private final int hash;
+
+    /**
+     * La valeur.
+     */
+    private final V value;
+
+    /**
+     * Constructeur.
+     *
+     * @param key   la cl
+     * @param hash  le hash de la cl
+     * @param value la valeur
+     */
+    private Entry(String key, int hash, V value) {
+      this.key = key;
+      this.hash = hash;
+      this.value = value;
+    }
+
+  }
+
+}
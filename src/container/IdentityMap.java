@@ -0,0 +1,81 @@
+package container;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import database.Entity;
+
+/**
+ * Table d'identit des entits charges depuis la base : pour une classe
+ * d'entit donne, un mme ID correspond toujours  la mme instance. Cette
+ * classe pouvant tre appele de n'importe quel thread, on utilise des
+ * ConcurrentHashMap.
+ */
+public class IdentityMap {
+
+  /**
+   * Entits indexes par classe puis par ID.
+   */
+  private final Map<Class<?>, Map<Long, Entity>> entities = new ConcurrentHashMap<>();
+
+  /**
+   * Rcupre une entit  partir de sa classe et de son ID.
+   *
+   * @param c  la classe de l'entit
+   * @param id l'ID de l'entit
+   * @return l'entit ou null si elle n'a pas encore t charge
+   */
+  public <E extends Entity> E get(Class<E> c, long id) {
+    Map<Long, Entity> byId = entities.get(c);
+    return byId == null ? null : c.cast(byId.get(id));
+  }
+
+  /**
+   * Enregistre une entit si aucune instance n'est dj connue pour son ID.
+   *
+   * @param c      la classe de l'entit
+   * @param entity l'entit (son ID doit tre non nul)
+   * @return l'instance  utiliser : celle dj connue s'il y en a une, sinon
+   *         l'entit passe en paramtre
+   */
+  public <E extends Entity> E putIfAbsent(Class<E> c, E entity) {
+    if (entity == null || entity.getId() == 0) return entity;
+
+    Entity known = entities.computeIfAbsent(c, k -> new ConcurrentHashMap<>()).putIfAbsent(entity.getId(), entity);
+    return known == null ? entity : c.cast(known);
+  }
+
+  /**
+   * Enregistre une entit, en remplaant l'instance dj connue pour son ID
+   * (aprs une mise  jour faite  partir d'une autre instance, par exemple).
+   *
+   * @param c      la classe de l'entit
+   * @param entity l'entit (sans effet si son ID est nul)
+   */
+  public <E extends Entity> void put(Class<E> c, E entity) {
+    if (entity == null || entity.getId() == 0) return;
+
+    entities.computeIfAbsent(c, k -> new ConcurrentHashMap<>()).put(entity.getId(), entity);
+  }
+
+  /**
+   * Retire une entit de la table.
+   *
+   * @param c  la classe de l'entit
+   * @param id l'ID de l'entit
+   */
+  public void remove(Class<?> c, long id) {
+    Map<Long, Entity> byId = entities.get(c);
+    if (byId != null) byId.remove(id);
+  }
+
+  /**
+   * Retire toutes les entits d'une classe.
+   *
+   * @param c la classe des entits
+   */
+  public void clear(Class<?> c) {
+    entities.remove(c);
+  }
+
+}
@@ -17,6 +17,11 @@ public class ManagerContainer implements IContainer {
    */
   private static Map<Class<Manager<? extends Entity>>, Manager<? extends Entity>> managers = new ConcurrentHashMap<>();
 
+  /**
+   * Table d'identit des entits charges par les managers du conteneur.
+   */
+  private final IdentityMap identityMap = new IdentityMap();
+
   /**
    * Instance du ManagerContainer.
    */
@@ -36,6 +41,16 @@ public class ManagerContainer implements IContainer {
     return instance;
   }
 
+  /**
+   * Renvoie la table d'identit des entits charges par les managers du
+   * conteneur.
+   *
+   * @return la table d'identit
+   */
+  public IdentityMap getIdentityMap() {
+    return identityMap;
+  }
+
   /**
    * {@inheritDoc}
    */
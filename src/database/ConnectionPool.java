@@ -0,0 +1,501 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool de connexions  la base de donnes.
+ *
+ * Les connexions sont empruntes pour une opration (ou une unit de travail)
+ * puis rendues au pool par leur mthode close, ce qui permet de les utiliser
+ * dans un try-with-resources. Un thread qui emprunte une connexion alors qu'il
+ * en dtient dj une rcupre la mme : les oprations imbriques (insertions
+ * en cascade par exemple) partagent ainsi leur connexion et ne peuvent pas
+ * puiser le pool.
+ *
+ * Les connexions restes inutilises trop longtemps sont vrifies avant d'tre
+ * rutilises et fermes aprs un certain dlai.
+ *
+ * Seule la connexion emprunte est enveloppe : les requtes, rsultats et
+ * mtadonnes sont ceux du pilote, sans surcot  l'excution. Leur
+ * getConnection renvoie donc la connexion physique, qui ne doit pas tre
+ * ferme (sa mthode close contournerait le pool).
+ *
+ * Un emprunt peut tre rendu depuis un autre thread que celui qui l'a effectu
+ * (nettoyage d'un flux abandonn par exemple) : la connexion n'est rendue au
+ * pool qu'une fois tous les emprunts du thread propritaire rendus, et celui-ci
+ * en empruntera une nouvelle  son prochain appel.
+ */
+public class ConnectionPool {
+
+  /**
+   * Dure (en ms) d'inactivit au-del de laquelle une connexion est vrifie
+   * avant d'tre prte.
+   */
+  private static final long VALIDATION_INTERVAL = 5000;
+
+  /**
+   * Dlai (en s) accord  la vrification d'une connexion.
+   */
+  private static final int VALIDATION_TIMEOUT = 2;
+
+  /**
+   * Dlai maximal (en ms) d'attente d'une connexion libre.
+   */
+  private static final long BORROW_TIMEOUT = 30000;
+
+  /**
+   * URL JDBC de la base.
+   */
+  private final String url;
+
+  /**
+   * Nom d'utilisateur.
+   */
+  private final String username;
+
+  /**
+   * Mot de passe.
+   */
+  private final String password;
+
+  /**
+   * Nombre maximal de connexions ouvertes simultanment.
+   */
+  private final int maxSize;
+
+  /**
+   * Dure (en ms) au-del de laquelle une connexion inutilise est ferme.
+   */
+  private final long idleTimeout;
+
+  /**
+   * Connexions libres, la plus rcemment rendue en tte.
+   */
+  private final Deque<IdleConnection> idle = new ArrayDeque<>();
+
+  /**
+   * Nombre de connexions ouvertes (libres ou prtes).
+   */
+  private int nbOpen = 0;
+
+  /**
+   * Verrou protgeant l'tat du pool.
+   */
+  private final Lock lock = new ReentrantLock();
+
+  /**
+   * Condition signale lorsqu'une connexion est rendue ou ferme.
+   */
+  private final Condition available = lock.newCondition();
+
+  /**
+   * Connexion actuellement emprunte par chaque thread.
+   */
+  private final ThreadLocal<PooledConnection> current = new ThreadLocal<>();
+
+  /**
+   * Thread fermant les connexions inutilises.
+   */
+  private final ScheduledExecutorService evictor;
+
+  /**
+   * Constructeur.
+   *
+   * @param url         l'URL JDBC de la base
+   * @param username    le nom d'utilisateur
+   * @param password    le mot de passe
+   * @param maxSize     le nombre maximal de connexions
+   * @param idleTimeout la dure (en ms) au-del de laquelle une connexion
+   *                    inutilise est ferme
+   */
+  public ConnectionPool(String url, String username, String password, int maxSize, long idleTimeout) {
+    this.url = url;
+    this.username = username;
+    this.password = password;
+    this.maxSize = Math.max(1, maxSize);
+    this.idleTimeout = Math.max(1000, idleTimeout);
+
+    evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "connection-pool-evictor");
+      t.setDaemon(true);
+      return t;
+    });
+    long period = Math.max(1000, this.idleTimeout / 2);
+    evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Emprunte une connexion. Elle doit tre rendue en appelant sa mthode close.
+   *
+   * @return une connexion valide
+   * @throws SQLException si aucune connexion n'a pu tre obtenue
+   */
+  public Connection getConnection() throws SQLException {
+    PooledConnection pooled = current.get();
+    if (pooled == null || !pooled.borrowAgain()) {
+      pooled = new PooledConnection(acquire());
+      current.set(pooled);
+    }
+
+    return pooled.newHandle();
+  }
+
+  /**
+   * Renvoie le nombre de connexions ouvertes.
+   *
+   * @return le nombre de connexions libres ou prtes
+   */
+  public int getOpenCount() {
+    lock.lock();
+    try {
+      return nbOpen;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Ferme toutes les connexions libres et arrte le pool.
+   */
+  public void shutdown() {
+    evictor.shutdownNow();
+
+    lock.lock();
+    try {
+      for (IdleConnection c : idle) {
+        closeQuietly(c.connection);
+        nbOpen--;
+      }
+      idle.clear();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Rcupre une connexion physique libre, en ouvre une nouvelle si le pool
+   * n'est pas plein ou attend qu'une connexion soit rendue.
+   *
+   * @return la connexion physique
+   * @throws SQLException si la connexion n'a pas pu tre obtenue  temps
+   */
+  private Connection acquire() throws SQLException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BORROW_TIMEOUT);
+
+    while (true) {
+      IdleConnection candidate = null;
+      boolean open = false;
+
+      lock.lock();
+      try {
+        while (idle.isEmpty() && nbOpen >= maxSize) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            throw new SQLException("Aucune connexion disponible aprs " + BORROW_TIMEOUT + " ms");
+          }
+          available.awaitNanos(remaining);
+        }
+
+        if (!idle.isEmpty()) {
+          candidate = idle.pollFirst();
+        } else {
+          // Place rserve pour une nouvelle connexion
+          nbOpen++;
+          open = true;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Attente d'une connexion interrompue", e);
+      } finally {
+        lock.unlock();
+      }
+
+      if (open) {
+        try {
+          return DriverManager.getConnection(url, username, password);
+        } catch (SQLException e) {
+          discard(null);
+          throw e;
+        }
+      }
+
+      // Connexion inutilise depuis un moment : on vrifie qu'elle n'a pas
+      // t coupe par le serveur
+      if (System.currentTimeMillis() - candidate.since < VALIDATION_INTERVAL || isValid(candidate.connection)) {
+        return candidate.connection;
+      }
+      discard(candidate.connection);
+    }
+  }
+
+  /**
+   * Rend une connexion physique au pool, en la remettant dans son tat par
+   * dfaut.
+   *
+   * @param connection la connexion physique
+   */
+  private void release(Connection connection) {
+    try {
+      if (connection.isClosed()) {
+        discard(null);
+        return;
+      }
+      if (!connection.getAutoCommit()) {
+        // Transaction laisse ouverte par l'emprunteur
+        connection.rollback();
+        connection.setAutoCommit(true);
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+      discard(connection);
+      return;
+    }
+
+    lock.lock();
+    try {
+      idle.addFirst(new IdleConnection(connection));
+      available.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Ferme une connexion physique et libre sa place dans le pool.
+   *
+   * @param connection la connexion  fermer (null si dj ferme)
+   */
+  private void discard(Connection connection) {
+    if (connection != null) closeQuietly(connection);
+
+    lock.lock();
+    try {
+      nbOpen--;
+      available.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Ferme les connexions inutilises depuis plus de idleTimeout.
+   */
+  private void evictIdle() {
+    long now = System.currentTimeMillis();
+
+    lock.lock();
+    try {
+      for (Iterator<IdleConnection> it = idle.iterator(); it.hasNext();) {
+        IdleConnection c = it.next();
+        if (now - c.since > idleTimeout) {
+          it.remove();
+          closeQuietly(c.connection);
+          nbOpen--;
+          available.signal();
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Vrifie qu'une connexion est toujours utilisable.
+   *
+   * @param connection la connexion  tester
+   * @return true si la connexion est valide
+   */
+  private static boolean isValid(Connection connection) {
+    try {
+      return connection.isValid(VALIDATION_TIMEOUT);
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Ferme une connexion en ignorant les erreurs.
+   *
+   * @param connection la connexion  fermer
+   */
+  private static void closeQuietly(Connection connection) {
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      // La connexion est abandonne de toute faon
+    }
+  }
+
+  /**
+   * Connexion libre et date  laquelle elle a t rendue.
+   */
+  private static class IdleConnection {
+
+    /**
+     * La connexion physique.
+     */
+    private final Connection connection;
+
+    /**
+     * Date (en ms)  laquelle la connexion a t rendue.
+     */
+    private final long since;
+
+    /**
+     * Constructeur.
+     *
+     * @param connection la connexion physique
+     */
+    private IdleConnection(Connection connection) {
+      this.connection = connection;
+      this.since = System.currentTimeMillis();
+    }
+
+  }
+
+  /**
+   * Connexion emprunte par un thread, ventuellement plusieurs fois de manire
+   * imbrique.
+   */
+  private class PooledConnection {
+
+    /**
+     * La connexion physique.
+     */
+    private final Connection connection;
+
+    /**
+     * Thread ayant emprunt la connexion.
+     */
+    private final Thread owner = Thread.currentThread();
+
+    /**
+     * Nombre d'emprunts en cours par le thread.
+     */
+    private int depth = 1;
+
+    /**
+     * Indique si la connexion a t rendue au pool.
+     */
+    private boolean released = false;
+
+    /**
+     * Verrou protgeant depth et released (un emprunt pouvant tre rendu depuis
+     * un autre thread). Il n'est jamais dtenu pendant un change avec la base.
+     */
+    private final Lock borrowLock = new ReentrantLock();
+
+    /**
+     * Constructeur.
+     *
+     * @param connection la connexion physique
+     */
+    private PooledConnection(Connection connection) {
+      this.connection = connection;
+    }
+
+    /**
+     * Cre une vue sur la connexion dont la mthode close rend l'emprunt.
+     *
+     * @return la connexion  utiliser par l'emprunteur
+     */
+    private Connection newHandle() {
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+          new Class<?>[] { Connection.class }, new Handle());
+    }
+
+    /**
+     * Ajoute un emprunt imbriqu, si la connexion n'a pas dj t rendue (par
+     * un autre thread).
+     *
+     * @return true si l'emprunt a t ajout
+     */
+    private boolean borrowAgain() {
+      borrowLock.lock();
+      try {
+        if (released) return false;
+
+        depth++;
+        return true;
+      } finally {
+        borrowLock.unlock();
+      }
+    }
+
+    /**
+     * Met fin  un emprunt et rend la connexion au pool si c'tait le dernier.
+     * Appele depuis un autre thread que le propritaire, elle ne peut pas
+     * retirer la connexion de son ThreadLocal : il le sera lors de son prochain
+     * emprunt (voir borrowAgain). La connexion est rendue une fois le verrou
+     * relch, release changeant avec la base.
+     */
+    private void close() {
+      borrowLock.lock();
+      try {
+        if (--depth > 0) return;
+        released = true;
+      } finally {
+        borrowLock.unlock();
+      }
+
+      if (Thread.currentThread() == owner) current.remove();
+      release(connection);
+    }
+
+    /**
+     * Intercepte les appels  une connexion emprunte.
+     */
+    private class Handle implements InvocationHandler {
+
+      /**
+       * Indique si cet emprunt a t rendu.
+       */
+      private volatile boolean closed = false;
+
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+        case "close":
+          if (!closed) {
+            closed = true;
+            PooledConnection.this.close();
+          }
+          return null;
+        case "isClosed":
+          return closed || connection.isClosed();
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return "PooledConnection[" + connection + "]";
+        default:
+          if (closed) throw new SQLException("Connexion dj rendue au pool");
+          try {
+            return method.invoke(connection, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        }
+      }
+
+    }
+
+  }
+
+}
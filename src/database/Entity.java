@@ -8,14 +8,22 @@ public abstract class Entity {
   /**
    * ID de l'entite (vaut 0 si elle n'est pas dans la base).
    */
-  private int id = 0;
+  private volatile long id = 0;
+
+  /**
+   * Indique si l'entit a t modifie depuis sa dernire lecture ou criture
+   * dans la base (une nouvelle entit est considre comme modifie). Permet aux
+   * managers de ne pas rcrire en cascade des entits inchanges. Volatile car
+   * les entits partages sont modifies et lues par des threads diffrents.
+   */
+  private volatile boolean dirty = true;
 
   /**
    * Getter id.
    *
    * @return id
    */
-  public int getId() {
+  public long getId() {
     return id;
   }
 
@@ -24,10 +32,34 @@ public abstract class Entity {
    *
    * @param id l'id
    */
-  public void setId(int id) {
+  public void setId(long id) {
     this.id = id;
   }
 
+  /**
+   * Indique si l'entit a t modifie depuis sa dernire synchronisation avec
+   * la base.
+   *
+   * @return true si l'entit doit tre crite, false sinon
+   */
+  public boolean isDirty() {
+    return dirty;
+  }
+
+  /**
+   * Signale que l'entit a t modifie et diffre de la base.
+   */
+  public void markDirty() {
+    dirty = true;
+  }
+
+  /**
+   * Signale que l'entit est identique  la base (aprs lecture ou criture).
+   */
+  public void markClean() {
+    dirty = false;
+  }
+
   /**
    * Vrifie l'galit sur l'ID.
    *
@@ -54,7 +86,7 @@ public abstract class Entity {
    */
   @Override
   public int hashCode() {
-    return (getClass().hashCode() + id) * 31;
+    return (getClass().hashCode() + Long.hashCode(id)) * 31;
   }
 
 }
@@ -1,11 +1,13 @@
 package database;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
+import config.Config;
+
 /**
- * Reprsente une connexion  une base de donnes MySQL.
+ * Donne accs aux connexions  la base de donnes MySQL, via un pool partag
+ * par toute l'application.
  */
 public class MySQLConnection {
 
@@ -30,25 +32,51 @@ public class MySQLConnection {
   private static final String PASSWORD = "";
 
   /**
-   * Instance de la connexion.
+   * Options du pilote :
+   * - useCursorFetch : lecture des grands rsultats par paquets (voir
+   * Manager.stream) ;
+   * - useServerPrepStmts/cachePrepStmts : les requtes prpares sont analyses
+   * une seule fois par le serveur puis conserves par chaque connexion et
+   * rutilises lorsque le mme texte SQL est prpar  nouveau. Les managers
+   * passent donc toutes les valeurs en paramtres pour qu'une mme forme de
+   * requte produise toujours le mme texte.
    */
-  private static Connection conn;
+  private static final String OPTIONS = "useCursorFetch=true&useServerPrepStmts=true&cachePrepStmts=true"
+      + "&prepStmtCacheSize=250&prepStmtCacheSqlLimit=65536";
 
   /**
-   * Renvoie l'instance de la connexion  la base.
+   * Renvoie le pool de connexions  la base (cr au premier appel).
    *
-   * @return l'instance de la connexion
-   */
-  public static Connection getConnection() {
-    if (conn == null) {
-      try {
-        conn = DriverManager.getConnection("jdbc:mysql://" + HOST + "/" + DB_NAME, USERNAME, PASSWORD);
-      } catch (SQLException e) {
-        e.printStackTrace();
-      }
-    }
-
-    return conn;
+   * @return le pool de connexions
+   */
+  public static ConnectionPool getPool() {
+    return PoolHolder.POOL;
+  }
+
+  /**
+   * Emprunte une connexion au pool. La connexion doit tre rendue en appelant sa
+   * mthode close (idalement via un try-with-resources).
+   *
+   * @return une connexion  la base
+   * @throws SQLException si aucune connexion n'a pu tre obtenue
+   */
+  public static Connection getConnection() throws SQLException {
+    return getPool().getConnection();
+  }
+
+  /**
+   * Dtient le pool, cr  la premire utilisation de manire sre vis--vis
+   * des threads (chargement de classe paresseux).
+   */
+  private static class PoolHolder {
+
+    /**
+     * Le pool de connexions.
+     */
+    private static final ConnectionPool POOL = new ConnectionPool(
+        "jdbc:mysql://" + HOST + "/" + DB_NAME + "?" + OPTIONS, USERNAME, PASSWORD, Config.DB_POOL_SIZE,
+        Config.DB_POOL_IDLE_TIMEOUT);
+
   }
 
 }
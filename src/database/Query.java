@@ -36,16 +36,72 @@ public class Query {
    */
   private List<String> where = new ArrayList<>();
 
+  /**
+   * Champs de la clause GROUP BY.
+   */
+  private List<String> groups = new ArrayList<>();
+
   /**
    * Champs de la clause ORDER BY
    */
   private Map<String, Order> orders = new LinkedHashMap<>();
 
+  /**
+   * Nombre maximal de lignes renvoyes (0 pour ne pas limiter).
+   */
+  private int limit;
+
+  /**
+   * Nombre de lignes  sauter avant la premire ligne renvoye.
+   */
+  private int offset;
+
   /**
    * Paramtres effectifs passs aux requtes paramtres.
    */
   private List<Object> params = new ArrayList<>();
 
+  /**
+   * Texte SQL dj construit, rinitialis  chaque modification de la requte
+   * (les paramtres, dont la limite et le dcalage, n'en font pas partie).
+   */
+  private String sql;
+
+  /**
+   * Texte dj construit des clauses SELECT, FROM et JOIN, rinitialis 
+   * chaque modification de l'une d'elles. Il est conserv par copy : les
+   * requtes construites  partir d'une mme requte de base ne le recalculent
+   * pas.
+   */
+  private String head;
+
+  /**
+   * Constructeur.
+   */
+  public Query() {
+  }
+
+  /**
+   * Constructeur par copie.
+   *
+   * @param other la requte  copier
+   */
+  private Query(Query other) {
+    select.addAll(other.select);
+    from.addAll(other.from);
+    for (Map.Entry<String, List<String>> entry : other.joins.entrySet()) {
+      joins.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+    }
+    where.addAll(other.where);
+    groups.addAll(other.groups);
+    orders.putAll(other.orders);
+    limit = other.limit;
+    offset = other.offset;
+    params.addAll(other.params);
+    sql = other.sql;
+    head = other.head;
+  }
+
   /**
    * Ordres possibles.
    */
@@ -53,6 +109,23 @@ public class Query {
     ASC, DESC;
   }
 
+  /**
+   * Fonctions d'agrgation possibles.
+   */
+  public static enum Aggregate {
+    AVG, MIN, MAX, SUM, COUNT;
+
+    /**
+     * Applique la fonction  une expression.
+     *
+     * @param expression l'expression (une colonne en gnral)
+     * @return l'expression agrge, par ex. "AVG(value.value)"
+     */
+    public String of(String expression) {
+      return name() + "(" + expression + ")";
+    }
+  }
+
   /**
    * Ajoute des champs au SELECT.
    *
@@ -64,6 +137,8 @@ public class Query {
       select.add(field);
     }
 
+    sql = null;
+    head = null;
     return this;
   }
 
@@ -78,6 +153,8 @@ public class Query {
       from.add(table);
     }
 
+    sql = null;
+    head = null;
     return this;
   }
 
@@ -98,6 +175,8 @@ public class Query {
     }
     curConditions.add(condition);
 
+    sql = null;
+    head = null;
     return this;
   }
 
@@ -112,6 +191,39 @@ public class Query {
       where.add(condition);
     }
 
+    sql = null;
+    return this;
+  }
+
+  /**
+   * Ajoute des expressions agrges au SELECT.
+   *
+   * @param aggregate la fonction d'agrgation
+   * @param fields    les champs  agrger
+   * @return this
+   */
+  public Query select(Aggregate aggregate, String... fields) {
+    for (String field : fields) {
+      select.add(aggregate.of(field));
+    }
+
+    sql = null;
+    head = null;
+    return this;
+  }
+
+  /**
+   * Ajoute des champs (ou des alias du SELECT) au GROUP BY.
+   *
+   * @param columns les champs  ajouter
+   * @return this
+   */
+  public Query groupBy(String... columns) {
+    for (String column : columns) {
+      groups.add(column);
+    }
+
+    sql = null;
     return this;
   }
 
@@ -125,6 +237,33 @@ public class Query {
   public Query orderBy(String column, Order order) {
     orders.put(column, order);
 
+    sql = null;
+    return this;
+  }
+
+  /**
+   * Limite le nombre de lignes renvoyes.
+   *
+   * @param limit le nombre maximal de lignes (0 pour ne pas limiter)
+   * @return this
+   */
+  public Query limit(int limit) {
+    // Seule la prsence d'une limite change le texte, sa valeur est un paramtre
+    if ((limit > 0) != (this.limit > 0)) sql = null;
+    this.limit = limit;
+
+    return this;
+  }
+
+  /**
+   * Saute des lignes avant la premire ligne renvoye (utilis avec limit).
+   *
+   * @param offset le nombre de lignes  sauter
+   * @return this
+   */
+  public Query offset(int offset) {
+    this.offset = offset;
+
     return this;
   }
 
@@ -143,7 +282,17 @@ public class Query {
   }
 
   /**
-   * Injecte les paramtres effectifs dans la requte prpare.
+   * Copie la requte, en conservant le texte dj construit.
+   *
+   * @return une nouvelle requte identique, modifiable indpendamment
+   */
+  public Query copy() {
+    return new Query(this);
+  }
+
+  /**
+   * Injecte les paramtres effectifs dans la requte prpare, puis la limite
+   * et le dcalage s'il y a lieu.
    *
    * @param pst la requte prpare dont on veut injecter des paramtres
    * @return le rsultat de l'excution du PreparedStatement
@@ -160,6 +309,7 @@ public class Query {
         else if (o instanceof Double) pst.setDouble(i, (Double) o);
         else if (o instanceof Float) pst.setFloat(i, (Float) o);
         else if (o instanceof Integer) pst.setInt(i, (Integer) o);
+        else if (o instanceof Long) pst.setLong(i, (Long) o);
         else if (o instanceof String) pst.setString(i, (String) o);
         else if (o instanceof Timestamp) pst.setTimestamp(i, (Timestamp) o);
         else if (o instanceof Enum) pst.setString(i, ((Enum<?>) o).name());
@@ -173,6 +323,10 @@ public class Query {
 
       ++i;
     }
+    if (limit > 0) {
+      pst.setInt(i++, limit);
+      pst.setInt(i, offset);
+    }
 
     return pst.executeQuery();
   }
@@ -184,16 +338,27 @@ public class Query {
    */
   @Override
   public String toString() {
+    if (sql != null) return sql;
+
+    if (head == null) {
+      List<String> headParts = new ArrayList<>();
+      constructSelect(headParts);
+      constructFrom(headParts);
+      constructJoin(headParts);
+      head = String.join(" ", headParts);
+    }
+
     List<String> parts = new ArrayList<>();
 
     // Construction de la requte
-    constructSelect(parts);
-    constructFrom(parts);
-    constructJoin(parts);
+    parts.add(head);
     constructWhere(parts);
+    constructGroupBy(parts);
     constructOrderBy(parts);
+    constructLimit(parts);
 
-    return String.join(" ", parts);
+    sql = String.join(" ", parts);
+    return sql;
   }
 
   /**
@@ -249,6 +414,18 @@ public class Query {
     }
   }
 
+  /**
+   * Construit le champ GROUP BY de la requte.
+   *
+   * @param parts les parties auxquelles ajouter le GROUP BY
+   */
+  private void constructGroupBy(List<String> parts) {
+    if (!groups.isEmpty()) {
+      parts.add("GROUP BY");
+      parts.add(String.join(", ", groups));
+    }
+  }
+
   /**
    * Construit le champ ORDER BY de la requte.
    *
@@ -270,4 +447,17 @@ public class Query {
     }
   }
 
+  /**
+   * Construit le champ LIMIT de la requte. La limite et le dcalage sont des
+   * paramtres (injects par execute) : une mme forme de requte garde le mme
+   * texte, et donc la mme requte prpare, quelle que soit la page lue.
+   *
+   * @param parts les parties auxquelles ajouter le LIMIT
+   */
+  private void constructLimit(List<String> parts) {
+    if (limit > 0) {
+      parts.add("LIMIT ? OFFSET ?");
+    }
+  }
+
 }
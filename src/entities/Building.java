@@ -1,5 +1,7 @@
 package entities;
 
+import java.util.Objects;
+
 import database.Entity;
 
 /**
@@ -27,6 +29,7 @@ public class Building extends Entity {
    * @param name le nom du btiment
    */
   public void setName(String name) {
+    if (!Objects.equals(this.name, name)) markDirty();
     this.name = name;
   }
 
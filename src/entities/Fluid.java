@@ -97,6 +97,7 @@ public class Fluid extends Entity {
    * @param type le type du fluide
    */
   public void setType(Type type) {
+    if (this.type != type) markDirty();
     this.type = type;
   }
 
@@ -0,0 +1,247 @@
+package entities;
+
+import java.sql.Timestamp;
+import java.util.Objects;
+
+import database.Entity;
+
+/**
+ * Reprsente un agrgat des valeurs d'un capteur sur un intervalle de temps
+ * (une minute, une heure ou un jour). Un agrgat n'a pas d'ID : il est
+ * identifi par son capteur et le dbut de son intervalle.
+ */
+public class Rollup extends Entity {
+
+  /**
+   * Capteur dont les valeurs sont agrges.
+   */
+  private Sensor sensor;
+
+  /**
+   * Dbut de l'intervalle.
+   */
+  private Timestamp start;
+
+  /**
+   * Plus petite valeur de l'intervalle.
+   */
+  private double min;
+
+  /**
+   * Plus grande valeur de l'intervalle.
+   */
+  private double max;
+
+  /**
+   * Somme des valeurs de l'intervalle.
+   */
+  private double sum;
+
+  /**
+   * Nombre de valeurs de l'intervalle.
+   */
+  private long count;
+
+  /**
+   * Dernire valeur de l'intervalle.
+   */
+  private double last;
+
+  /**
+   * Date de la dernire valeur de l'intervalle.
+   */
+  private Timestamp lastDateTime;
+
+  /**
+   * Constructeur.
+   *
+   * @param sensor le capteur
+   * @param start  le dbut de l'intervalle
+   */
+  public Rollup(Sensor sensor, Timestamp start) {
+    this.sensor = sensor;
+    this.start = start;
+  }
+
+  /**
+   * Ajoute une valeur  l'agrgat.
+   *
+   * @param value la valeur
+   */
+  public void add(Value value) {
+    double v = value.getValue();
+    if (count == 0 || v < min) min = v;
+    if (count == 0 || v > max) max = v;
+    sum += v;
+    if (lastDateTime == null || !value.getDateTime().before(lastDateTime)) {
+      last = v;
+      lastDateTime = value.getDateTime();
+    }
+    count++;
+    markDirty();
+  }
+
+  /**
+   * Renvoie la moyenne des valeurs de l'intervalle.
+   *
+   * @return la moyenne (0 si l'intervalle ne contient aucune valeur)
+   */
+  public double getAverage() {
+    return count == 0 ? 0. : sum / count;
+  }
+
+  /**
+   * Getter sensor.
+   *
+   * @return sensor
+   */
+  public Sensor getSensor() {
+    return sensor;
+  }
+
+  /**
+   * Getter start.
+   *
+   * @return start
+   */
+  public Timestamp getStart() {
+    return start;
+  }
+
+  /**
+   * Getter min.
+   *
+   * @return min
+   */
+  public double getMin() {
+    return min;
+  }
+
+  /**
+   * Setter min.
+   *
+   * @param min
+   */
+  public void setMin(double min) {
+    if (this.min != min) markDirty();
+    this.min = min;
+  }
+
+  /**
+   * Getter max.
+   *
+   * @return max
+   */
+  public double getMax() {
+    return max;
+  }
+
+  /**
+   * Setter max.
+   *
+   * @param max
+   */
+  public void setMax(double max) {
+    if (this.max != max) markDirty();
+    this.max = max;
+  }
+
+  /**
+   * Getter sum.
+   *
+   * @return sum
+   */
+  public double getSum() {
+    return sum;
+  }
+
+  /**
+   * Setter sum.
+   *
+   * @param sum
+   */
+  public void setSum(double sum) {
+    if (this.sum != sum) markDirty();
+    this.sum = sum;
+  }
+
+  /**
+   * Getter count.
+   *
+   * @return count
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Setter count.
+   *
+   * @param count
+   */
+  public void setCount(long count) {
+    if (this.count != count) markDirty();
+    this.count = count;
+  }
+
+  /**
+   * Getter last.
+   *
+   * @return last
+   */
+  public double getLast() {
+    return last;
+  }
+
+  /**
+   * Getter lastDateTime.
+   *
+   * @return lastDateTime
+   */
+  public Timestamp getLastDateTime() {
+    return lastDateTime;
+  }
+
+  /**
+   * Modifie la dernire valeur de l'intervalle et sa date.
+   *
+   * @param last         la dernire valeur
+   * @param lastDateTime sa date
+   */
+  public void setLast(double last, Timestamp lastDateTime) {
+    if (this.last != last || !Objects.equals(this.lastDateTime, lastDateTime)) markDirty();
+    this.last = last;
+    this.lastDateTime = lastDateTime;
+  }
+
+  /**
+   * Vrifie l'galit sur le capteur et le dbut de l'intervalle (un agrgat
+   * n'a pas d'ID : il est identifi par sa cl dans la base).
+   *
+   * @return true si gaux, false sinon
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof Rollup)) return false;
+
+    Rollup r = (Rollup) obj;
+    return Objects.equals(sensor, r.sensor) && Objects.equals(start, r.start);
+  }
+
+  /**
+   * Renvoie le hashCode calcul  partir du capteur et du dbut de
+   * l'intervalle.
+   *
+   * @return le hashCode
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(sensor, start);
+  }
+
+  @Override
+  public String toString() {
+    return getAverage() + " (" + start + ", " + count + " valeurs)";
+  }
+
+}
@@ -1,48 +1,51 @@
 package entities;
 
 import java.util.List;
+import java.util.Objects;
 
 import database.Entity;
 
 /**
- * Reprsente un capteur.
+ * Reprsente un capteur. L'instance du registre est modifie par les threads de
+ * rception (reconnexion, dernire valeur) et lue par l'interface : les
+ * attributs modifiables sont donc volatiles.
  */
 public class Sensor extends Entity {
 
   /**
    * Nom.
    */
-  private String name;
+  private volatile String name;
 
   /**
    * tage.
    */
-  private int floor;
+  private volatile int floor;
 
   /**
    * Lieu.
    */
-  private String place;
+  private volatile String place;
 
   /**
    * Seuil min.
    */
-  private double minThreshold;
+  private volatile double minThreshold;
 
   /**
    * Seuil max.
    */
-  private double maxThreshold;
+  private volatile double maxThreshold;
 
   /**
    * Fluide.
    */
-  private Fluid fluid;
+  private volatile Fluid fluid;
 
   /**
    * Btiment.
    */
-  private Building building;
+  private volatile Building building;
 
   /**
    * Liste des valeurs.
@@ -54,7 +57,7 @@ public class Sensor extends Entity {
    * but d'tre manipul manuellement sinon il vaut null (mme s'il existe une
    * dernire valeur dans la base).
    */
-  private Value lastValue;
+  private volatile Value lastValue;
 
   /**
    * Constructeur.
@@ -88,6 +91,7 @@ public class Sensor extends Entity {
    * @param name
    */
   public void setName(String name) {
+    if (!Objects.equals(this.name, name)) markDirty();
     this.name = name;
   }
 
@@ -106,6 +110,7 @@ public class Sensor extends Entity {
    * @param floor
    */
   public void setFloor(int floor) {
+    if (this.floor != floor) markDirty();
     this.floor = floor;
   }
 
@@ -124,6 +129,7 @@ public class Sensor extends Entity {
    * @param place
    */
   public void setPlace(String place) {
+    if (!Objects.equals(this.place, place)) markDirty();
     this.place = place;
   }
 
@@ -142,6 +148,7 @@ public class Sensor extends Entity {
    * @param minThreshold
    */
   public void setMinThreshold(double minThreshold) {
+    if (this.minThreshold != minThreshold) markDirty();
     this.minThreshold = minThreshold;
   }
 
@@ -160,6 +167,7 @@ public class Sensor extends Entity {
    * @param maxThreshold
    */
   public void setMaxThreshold(double maxThreshold) {
+    if (this.maxThreshold != maxThreshold) markDirty();
     this.maxThreshold = maxThreshold;
   }
 
@@ -178,6 +186,7 @@ public class Sensor extends Entity {
    * @param fluid
    */
   public void setFluid(Fluid fluid) {
+    if (!Objects.equals(this.fluid, fluid)) markDirty();
     this.fluid = fluid;
   }
 
@@ -196,6 +205,7 @@ public class Sensor extends Entity {
    * @param building
    */
   public void setBuilding(Building building) {
+    if (!Objects.equals(this.building, building)) markDirty();
     this.building = building;
   }
 
@@ -1,6 +1,7 @@
 package entities;
 
 import java.sql.Timestamp;
+import java.util.Objects;
 
 import database.Entity;
 
@@ -39,6 +40,7 @@ public class Value extends Entity implements Comparable<Value> {
    * @param value
    */
   public void setValue(double value) {
+    if (this.value != value) markDirty();
     this.value = value;
   }
 
@@ -57,6 +59,7 @@ public class Value extends Entity implements Comparable<Value> {
    * @param dateTime
    */
   public void setDateTime(Timestamp dateTime) {
+    if (!Objects.equals(this.dateTime, dateTime)) markDirty();
     this.dateTime = dateTime;
   }
 
@@ -75,6 +78,7 @@ public class Value extends Entity implements Comparable<Value> {
    * @param sensor
    */
   public void setSensor(Sensor sensor) {
+    if (!Objects.equals(this.sensor, sensor)) markDirty();
     this.sensor = sensor;
   }
 
@@ -15,7 +15,13 @@ import javax.swing.plaf.FontUIResource;
 
 import config.Config;
 import container.ManagerContainer;
+import managers.PartitionMaintainer;
+import managers.SensorManager;
+import managers.ValueManager;
+import managers.ValuePurger;
 import server.DBWriter;
+import server.IWriter;
+import server.IngestionQueue;
 import server.SensorServer;
 import table.SensorTable;
 import table.SensorTableModel;
@@ -48,10 +54,34 @@ public class Main {
     // Cration de la table utilise dans l'application
     JTable table = new SensorTable();
 
-    // Lancement du serveur
-    SensorServer ss = new SensorServer(port,
-        new DBWriter(ManagerContainer.getInstance(), (SensorTableModel) table.getModel()));
-    Thread t = new Thread(ss);
+    // Lancement du serveur, avec si besoin une file entre la rception des
+    // messages et leur criture dans la base
+    DBWriter dbWriter = new DBWriter(ManagerContainer.getInstance(), (SensorTableModel) table.getModel());
+    IWriter writer = dbWriter;
+    if (Config.QUEUE_CAPACITY > 0) {
+      writer = new IngestionQueue(dbWriter, Config.QUEUE_CAPACITY, Config.QUEUE_CONSUMERS, Config.QUEUE_POLICY,
+          Config.QUEUE_PER_SENSOR_LIMIT);
+    }
+    ManagerContainer mc = ManagerContainer.getInstance();
+    if (Config.PARTITIONING != PartitionMaintainer.Period.NONE) {
+      // Cration des partitions  venir et suppression des partitions
+      // expires
+      new PartitionMaintainer(mc.get(ValueManager.class), Config.PARTITIONING, Config.PARTITIONS_AHEAD,
+          Config.RETENTION_DAYS);
+    }
+    // Purge en arrire-plan des valeurs expires et des valeurs des capteurs
+    // supprims
+    SensorManager sm = mc.get(SensorManager.class);
+    sm.setPurger(new ValuePurger(mc.get(ValueManager.class), sm, Config.RETENTION_DAYS, Config.PURGE_CHUNK_SIZE,
+        Config.PURGE_INTERVAL));
+    SensorServer ss = new SensorServer(port, writer, Config.SERVER_MODE, Config.SERVER_EVENT_LOOPS);
+    Thread t = new Thread(() -> {
+      if (Config.ROLLUPS_ENABLED && Config.ROLLUP_BACKFILL) {
+        // Les agrgats sont recalculs avant de recevoir des donnes
+        mc.get(ValueManager.class).backfillRollups();
+      }
+      ss.run();
+    });
     t.start();
 
     // Cration des panneaux de l'application
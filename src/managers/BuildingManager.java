@@ -11,6 +11,11 @@ import entities.Building;
  */
 public class BuildingManager extends Manager<Building> {
 
+  /**
+   * Cache des btiments de la base, indexs par ID et par nom.
+   */
+  private final ReferenceCache<Building> cache = new ReferenceCache<>(Building::getName, this::findAll);
+
   /**
    * Constructeur.
    */
@@ -19,18 +24,93 @@ public class BuildingManager extends Manager<Building> {
   }
 
   /**
-   * {@inheritDoc}
+   * Rcupre un btiment  partir de son nom, depuis le cache (sans accs  la
+   * base une fois le cache charg).
+   *
+   * @param name le nom du btiment
+   * @return le btiment ou null s'il n'existe pas
+   */
+  public Building findByName(String name) {
+    return cache.getByKey(name);
+  }
+
+  /**
+   * Rcupre un btiment  partir de son ID, depuis le cache. {@inheritDoc}
+   */
+  @Override
+  public Building find(long id) {
+    Building building = cache.getById(id);
+    if (building == null && id != 0) {
+      // Ajout  la base par un autre moyen
+      building = super.find(id);
+      cache.put(building);
+    }
+
+    return building;
+  }
+
+  /**
+   * Vide le cache, qui sera recharg depuis la base au prochain accs (
+   * appeler si la table a t modifie par un autre moyen que ce manager).
+   */
+  public void invalidateCache() {
+    cache.invalidate();
+    mc.getIdentityMap().clear(Building.class);
+  }
+
+  /**
+   * Insre le btiment et l'ajoute au cache. {@inheritDoc}
+   */
+  @Override
+  public void insert(Building entity) {
+    super.insert(entity);
+    cache.put(mc.getIdentityMap().putIfAbsent(Building.class, entity));
+  }
+
+  /**
+   * Met  jour le btiment et le cache. L'instance mise  jour devient celle de
+   * la table d'identit, pour que le cache et les entits hydrates ensuite
+   * partagent la mme instance. {@inheritDoc}
+   */
+  @Override
+  public void update(Building entity) {
+    super.update(entity);
+    mc.getIdentityMap().put(Building.class, entity);
+    cache.put(entity);
+  }
+
+  /**
+   * Supprime le btiment et le retire du cache. {@inheritDoc}
+   */
+  @Override
+  public void delete(Building entity) {
+    if (entity == null) return;
+
+    long id = entity.getId();
+    super.delete(entity);
+    cache.remove(id);
+    mc.getIdentityMap().remove(Building.class, id);
+  }
+
+  /**
+   * Renvoie l'instance dj charge pour cet ID s'il y en a une (voir
+   * IdentityMap). {@inheritDoc}
    */
   @Override
   protected Building hydrate(ResultSet rs) {
     Building building = null;
 
     try {
-      int id = rs.getInt(getTable() + ".id");
+      long id = rs.getLong(getTable() + ".id");
+      building = mc.getIdentityMap().get(Building.class, id);
+      if (building != null) return building;
+
       String name = rs.getString(getTable() + ".name");
       building = new Building();
       building.setId(id);
       building.setName(name);
+      building.markClean();
+      building = mc.getIdentityMap().putIfAbsent(Building.class, building);
     } catch (SQLException e) {
       e.printStackTrace();
     }
@@ -0,0 +1,333 @@
+package managers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.stream.Stream;
+
+import database.Query;
+import entities.Value;
+import proxies.ValueProxy;
+
+/**
+ * Gre une table de valeurs au format compact : pas d'ID, une cl primaire
+ * (sensor_id, ts) avec la date en millisecondes depuis l'epoch (BIGINT) et une
+ * valeur en DOUBLE ou en FLOAT. Une ligne occupe ainsi environ deux fois moins
+ * de place que dans la table value, index compris.
+ *
+ * Les valeurs tant identifies par leur capteur et leur date, elles n'ont pas
+ * d'ID une fois insres (il reste  0). Deux valeurs d'un mme capteur reues
+ * dans la mme milliseconde sont fusionnes (la dernire l'emporte).
+ *
+ * Cette classe est utilise par le ValueManager, qui choisit la table selon le
+ * fluide du capteur.
+ */
+public class CompactValueManager extends Manager<Value> {
+
+  /**
+   * Indique si les valeurs sont stockes en FLOAT (sinon en DOUBLE).
+   */
+  private final boolean floatValues;
+
+  /**
+   * Constructeur.
+   *
+   * @param table       le nom de la table  grer
+   * @param floatValues true si les valeurs sont stockes en FLOAT
+   */
+  public CompactValueManager(String table, boolean floatValues) {
+    super(table, new String[] { "value", "ts", "sensor_id" });
+    this.floatValues = floatValues;
+  }
+
+  /**
+   * Insre plusieurs valeurs en une seule requte INSERT multi-lignes. Les
+   * capteurs des valeurs doivent dj tre dans la base.
+   *
+   * @param values les valeurs  insrer
+   * @throws SQLException si les valeurs n'ont pas pu tre crites
+   */
+  public void insertAll(List<Value> values) throws SQLException {
+    if (values.isEmpty()) return;
+
+    String q = getInsertQuery(values.size());
+
+    try (Connection conn = getConnection(); PreparedStatement pst = conn.prepareStatement(q)) {
+      int i = 1;
+      for (Value value : values) {
+        setValue(pst, i++, value.getValue());
+        pst.setLong(i++, value.getDateTime().getTime());
+        pst.setLong(i++, value.getSensor().getId());
+      }
+      pst.executeUpdate();
+
+      for (Value value : values) {
+        value.markClean();
+      }
+    }
+  }
+
+  /**
+   * Rcupre les valeurs d'un capteur, tries par date.
+   *
+   * @param sensorId l'ID du capteur
+   * @return les valeurs du capteur
+   */
+  public List<Value> findAllBySensor(long sensorId) {
+    Query query = baseQuery()
+      .where(getTable() + ".sensor_id = ?").params(sensorId)
+      .orderBy(getTable() + ".ts", Query.Order.ASC);
+
+    return fetchAll(query);
+  }
+
+  /**
+   * Compte les valeurs d'un capteur.
+   *
+   * @param sensorId l'ID du capteur
+   * @return le nombre de valeurs du capteur
+   */
+  public long countBySensor(long sensorId) {
+    return count(new Query().select("COUNT(*)").from(getTable())
+      .where(getTable() + ".sensor_id = ?").params(sensorId));
+  }
+
+  /**
+   * Rcupre une page des valeurs d'un capteur, tries par date (voir
+   * ValueManager.findPageBySensor). La date identifiant une valeur, la page
+   * suivante commence  la premire date suprieure  afterTime.
+   *
+   * @param sensorId  l'ID du capteur
+   * @param afterTime la date de la dernire valeur de la page prcdente, ou
+   *                  null
+   * @param offset    le rang de la premire valeur (si afterTime est null)
+   * @param limit     le nombre maximal de valeurs
+   * @return les valeurs de la page
+   */
+  public List<Value> findPageBySensor(long sensorId, Timestamp afterTime, int offset, int limit) {
+    Query query = baseQuery().where(getTable() + ".sensor_id = ?").params(sensorId);
+    if (afterTime != null) {
+      query.where(getTable() + ".ts > ?").params(afterTime.getTime());
+    } else {
+      query.offset(offset);
+    }
+
+    return fetchAll(query.orderBy(getTable() + ".ts", Query.Order.ASC).limit(limit));
+  }
+
+  /**
+   * Rcupre les valeurs d'un capteur comprises entre t1 et t2 inclus, tries
+   * par date (parcours d'intervalle de la cl primaire).
+   *
+   * @param sensorId l'ID du capteur
+   * @param t1       la date de dbut
+   * @param t2       la date de fin
+   * @return les valeurs du capteur comprises entre t1 et t2
+   */
+  public List<Value> findAllBySensorBetween(long sensorId, Timestamp t1, Timestamp t2) {
+    return fetchAll(betweenQuery(baseQuery(), sensorId, t1, t2));
+  }
+
+  /**
+   * Rcupre sous forme de colonnes les valeurs d'un capteur comprises entre t1
+   * et t2 inclus, tries par date.
+   *
+   * @param sensorId l'ID du capteur
+   * @param t1       la date de dbut
+   * @param t2       la date de fin
+   * @return la srie des valeurs
+   */
+  public ValueSeries findSeriesBySensorBetween(long sensorId, Timestamp t1, Timestamp t2) {
+    Query query = new Query().select(getTable() + ".ts", getTable() + ".value").from(getTable());
+    ValueSeries series = new ValueSeries();
+    forEachRow(betweenQuery(query, sensorId, t1, t2), rs -> series.add(rs.getLong(1), rs.getDouble(2)));
+
+    return series;
+  }
+
+  /**
+   * Parcourt en flux les valeurs d'un capteur comprises entre t1 et t2 inclus,
+   * tries par date (voir Manager.stream).
+   *
+   * @param sensorId l'ID du capteur
+   * @param t1       la date de dbut
+   * @param t2       la date de fin
+   * @return le flux des valeurs,  fermer aprs utilisation
+   */
+  public Stream<Value> streamBySensorBetween(long sensorId, Timestamp t1, Timestamp t2) {
+    return stream(betweenQuery(baseQuery(), sensorId, t1, t2));
+  }
+
+  /**
+   * Complte une requte pour rcuprer les valeurs d'un capteur comprises
+   * entre t1 et t2 inclus, tries par date.
+   *
+   * @param query    la requte  complter
+   * @param sensorId l'ID du capteur
+   * @param t1       la date de dbut
+   * @param t2       la date de fin
+   * @return la requte
+   */
+  private Query betweenQuery(Query query, long sensorId, Timestamp t1, Timestamp t2) {
+    return query
+      .where(getTable() + ".sensor_id = ?").params(sensorId)
+      .where(getTable() + ".ts BETWEEN ? AND ?").params(t1.getTime(), t2.getTime())
+      .orderBy(getTable() + ".ts", Query.Order.ASC);
+  }
+
+  /**
+   * Supprime les plus anciennes valeurs d'un capteur antrieures  une date,
+   * dans la limite d'un nombre de lignes (parcours de la cl primaire dans
+   * l'ordre, pour ne verrouiller que les lignes supprimes).
+   *
+   * @param sensorId l'ID du capteur
+   * @param time     la date limite (en ms, exclue)
+   * @param limit    le nombre maximal de valeurs  supprimer
+   * @return le nombre de valeurs supprimes
+   */
+  public int deleteBefore(long sensorId, long time, int limit) {
+    String q = "DELETE FROM " + getTable() + " WHERE sensor_id = ? AND ts < ? ORDER BY ts LIMIT ?";
+
+    try (Connection conn = getConnection(); PreparedStatement pst = conn.prepareStatement(q)) {
+      pst.setLong(1, sensorId);
+      pst.setLong(2, time);
+      pst.setInt(3, limit);
+      return pst.executeUpdate();
+    } catch (SQLException e) {
+      e.printStackTrace();
+      return 0;
+    }
+  }
+
+  /**
+   * Met  jour une valeur, identifie par son capteur et sa date.
+   *
+   * @param entity la valeur  mettre  jour
+   */
+  @Override
+  public void update(Value entity) {
+    if (entity == null || entity.getSensor() == null) return;
+
+    String q = "UPDATE " + getTable() + " SET value = ? WHERE sensor_id = ? AND ts = ?";
+
+    try (Connection conn = getConnection(); PreparedStatement pst = conn.prepareStatement(q)) {
+      setValue(pst, 1, entity.getValue());
+      pst.setLong(2, entity.getSensor().getId());
+      pst.setLong(3, entity.getDateTime().getTime());
+      pst.executeUpdate();
+      entity.markClean();
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Supprime une valeur, identifie par son capteur et sa date.
+   *
+   * @param entity la valeur  supprimer
+   */
+  @Override
+  public void delete(Value entity) {
+    if (entity == null || entity.getSensor() == null) return;
+
+    String q = "DELETE FROM " + getTable() + " WHERE sensor_id = ? AND ts = ?";
+
+    try (Connection conn = getConnection(); PreparedStatement pst = conn.prepareStatement(q)) {
+      pst.setLong(1, entity.getSensor().getId());
+      pst.setLong(2, entity.getDateTime().getTime());
+      pst.executeUpdate();
+      entity.markDirty();
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Ne slectionne que les colonnes utiles  l'hydratation.
+   *
+   * @return la requte de base
+   */
+  @Override
+  protected Query createBaseQuery() {
+    return super.createBaseQuery()
+      .select(getTable() + ".value", getTable() + ".ts", getTable() + ".sensor_id");
+  }
+
+  /**
+   * Une valeur dj prsente pour le mme capteur et la mme milliseconde est
+   * remplace. {@inheritDoc}
+   */
+  @Override
+  protected String generateInsertQuery(int nbRows) {
+    return super.generateInsertQuery(nbRows) + " ON DUPLICATE KEY UPDATE value = VALUES(value)";
+  }
+
+  /**
+   * Les valeurs rcupres chargent leurs capteurs ensemble (voir
+   * ValueProxy.batch). {@inheritDoc}
+   */
+  @Override
+  protected List<Value> fetchAll(Query query) {
+    List<Value> values = super.fetchAll(query);
+    ValueProxy.batch(values);
+
+    return values;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected Value hydrate(ResultSet rs) {
+    ValueProxy value = null;
+
+    try {
+      double val = floatValues ? rs.getFloat(getTable() + ".value") : rs.getDouble(getTable() + ".value");
+      long ts = rs.getLong(getTable() + ".ts");
+      long sensorId = rs.getLong(getTable() + ".sensor_id");
+
+      value = new ValueProxy(sensorId);
+      value.setValue(val);
+      value.setDateTime(new Timestamp(ts));
+      value.markClean();
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+
+    return value;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void dehydrate(PreparedStatement pst, Value entity) {
+    try {
+      setValue(pst, 1, entity.getValue());
+      pst.setLong(2, entity.getDateTime().getTime());
+      pst.setLong(3, mc.get(ValueManager.class).persistSensor(entity.getSensor()));
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Injecte une valeur dans la requte selon le type de la colonne.
+   *
+   * @param pst   la requte prpare
+   * @param index l'indice du paramtre
+   * @param value la valeur
+   * @throws SQLException
+   */
+  private void setValue(PreparedStatement pst, int index, double value) throws SQLException {
+    if (floatValues) {
+      pst.setFloat(index, (float) value);
+    } else {
+      pst.setDouble(index, value);
+    }
+  }
+
+}
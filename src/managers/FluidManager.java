@@ -12,6 +12,12 @@ import entities.Fluid.Type;
  */
 public class FluidManager extends Manager<Fluid> {
 
+  /**
+   * Cache des fluides de la base, indexs par ID et par type.
+   */
+  private final ReferenceCache<Fluid> cache = new ReferenceCache<>(
+      f -> f.getType() == null ? null : f.getType().name(), this::findAll);
+
   /**
    * Constructeur.
    */
@@ -20,17 +26,92 @@ public class FluidManager extends Manager<Fluid> {
   }
 
   /**
-   * {@inheritDoc}
+   * Rcupre un fluide  partir de son type, depuis le cache (sans accs  la
+   * base une fois le cache charg).
+   *
+   * @param type le type du fluide
+   * @return le fluide ou null s'il n'existe pas
+   */
+  public Fluid findByType(Type type) {
+    return cache.getByKey(type == null ? null : type.name());
+  }
+
+  /**
+   * Rcupre un fluide  partir de son ID, depuis le cache. {@inheritDoc}
+   */
+  @Override
+  public Fluid find(long id) {
+    Fluid fluid = cache.getById(id);
+    if (fluid == null && id != 0) {
+      // Ajout  la base par un autre moyen
+      fluid = super.find(id);
+      cache.put(fluid);
+    }
+
+    return fluid;
+  }
+
+  /**
+   * Vide le cache, qui sera recharg depuis la base au prochain accs (
+   * appeler si la table a t modifie par un autre moyen que ce manager).
+   */
+  public void invalidateCache() {
+    cache.invalidate();
+    mc.getIdentityMap().clear(Fluid.class);
+  }
+
+  /**
+   * Insre le fluide et l'ajoute au cache. {@inheritDoc}
+   */
+  @Override
+  public void insert(Fluid entity) {
+    super.insert(entity);
+    cache.put(mc.getIdentityMap().putIfAbsent(Fluid.class, entity));
+  }
+
+  /**
+   * Met  jour le fluide et le cache. L'instance mise  jour devient celle de
+   * la table d'identit, pour que le cache et les entits hydrates ensuite
+   * partagent la mme instance. {@inheritDoc}
+   */
+  @Override
+  public void update(Fluid entity) {
+    super.update(entity);
+    mc.getIdentityMap().put(Fluid.class, entity);
+    cache.put(entity);
+  }
+
+  /**
+   * Supprime le fluide et le retire du cache. {@inheritDoc}
+   */
+  @Override
+  public void delete(Fluid entity) {
+    if (entity == null) return;
+
+    long id = entity.getId();
+    super.delete(entity);
+    cache.remove(id);
+    mc.getIdentityMap().remove(Fluid.class, id);
+  }
+
+  /**
+   * Renvoie l'instance dj charge pour cet ID s'il y en a une (voir
+   * IdentityMap). {@inheritDoc}
    */
   @Override
   protected Fluid hydrate(ResultSet rs) {
     Fluid fluid = null;
 
     try {
-      int id = rs.getInt(getTable() + ".id");
+      long id = rs.getLong(getTable() + ".id");
+      fluid = mc.getIdentityMap().get(Fluid.class, id);
+      if (fluid != null) return fluid;
+
       Type type = Type.valueOf(rs.getString(getTable() + ".type"));
       fluid = new Fluid(type);
       fluid.setId(id);
+      fluid.markClean();
+      fluid = mc.getIdentityMap().putIfAbsent(Fluid.class, fluid);
     } catch (SQLException e) {
       e.printStackTrace();
     }
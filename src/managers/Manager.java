@@ -1,13 +1,27 @@
 package managers;
 
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import config.Config;
 import container.ManagerContainer;
 import database.Entity;
 import database.MySQLConnection;
@@ -25,14 +39,36 @@ public abstract class Manager<T extends Entity> {
   private String table;
 
   /**
-   * Conteneur de managers.
+   * Nombre maximal de requtes d'insertion multi-lignes conserves.
    */
-  protected ManagerContainer mc;
+  private static final int MAX_INSERT_SHAPES = 16;
+
+  /**
+   * Requtes d'insertion dj gnres, par nombre de lignes. Une requte
+   * donne produisant toujours le mme texte SQL, le pilote peut rutiliser la
+   * requte prpare correspondante sur chaque connexion (voir MySQLConnection).
+   */
+  private final Map<Integer, String> insertQueries = new ConcurrentHashMap<>();
+
+  /**
+   * Requte de mise  jour (gnre au premier appel).
+   */
+  private volatile String updateQuery;
+
+  /**
+   * Requte de suppression (gnre au premier appel).
+   */
+  private volatile String deleteQuery;
 
   /**
-   * Connexion  la base.
+   * Requte de base (gnre au premier appel, voir baseQuery).
+   */
+  private volatile Query base;
+
+  /**
+   * Conteneur de managers.
    */
-  protected Connection conn;
+  protected ManagerContainer mc;
 
   /**
    * Colonnes de la table.
@@ -49,7 +85,6 @@ public abstract class Manager<T extends Entity> {
     this.table = table;
     this.columns = columns;
     this.mc = ManagerContainer.getInstance();
-    this.conn = MySQLConnection.getConnection();
   }
 
   /**
@@ -61,22 +96,55 @@ public abstract class Manager<T extends Entity> {
     return table;
   }
 
+  /**
+   * Emprunte une connexion au pool pour une opration. La connexion doit tre
+   * rendue en la fermant ; si le thread dtient dj une connexion (opration
+   * imbrique), c'est la mme qui est renvoye.
+   *
+   * @return une connexion  la base
+   * @throws SQLException si aucune connexion n'a pu tre obtenue
+   */
+  protected Connection getConnection() throws SQLException {
+    return MySQLConnection.getConnection();
+  }
+
   /**
    * Cre une requte de base rcuprant tous les enregistrements de la table.
+   * Elle n'est appele qu'une fois : les requtes sont ensuite des copies du
+   * rsultat (voir baseQuery).
    *
    * @return une requte rcuprant tous les enregistrement de la table
    */
-  protected Query baseQuery() {
+  protected Query createBaseQuery() {
     return new Query().from(table);
   }
 
+  /**
+   * Renvoie une copie de la requte de base (voir createBaseQuery),  complter.
+   * Le texte des clauses SELECT, FROM et JOIN n'est construit qu'une fois par
+   * manager.
+   *
+   * @return une requte rcuprant tous les enregistrement de la table
+   */
+  protected Query baseQuery() {
+    Query query = base;
+    if (query == null) {
+      query = createBaseQuery();
+      // Construit et conserve le texte de la requte de base
+      query.toString();
+      base = query;
+    }
+
+    return query.copy();
+  }
+
   /**
    * Rcupre un enregistrement  partir de son ID.
    *
    * @param id l'ID de l'entit  trouver
    * @return l'entite trouve ou null si inexistante
    */
-  public T find(int id) {
+  public T find(long id) {
     return findBy("id", id);
   }
 
@@ -122,7 +190,9 @@ public abstract class Manager<T extends Entity> {
   protected T fetch(Query query) {
     T hydratedEntity = null;
 
-    try (PreparedStatement pst = conn.prepareStatement(query.toString()); ResultSet rs = query.execute(pst)) {
+    try (Connection conn = getConnection();
+        PreparedStatement pst = conn.prepareStatement(query.toString());
+        ResultSet rs = query.execute(pst)) {
       if (rs.first()) {
         hydratedEntity = hydrate(rs);
       }
@@ -143,7 +213,9 @@ public abstract class Manager<T extends Entity> {
   protected List<T> fetchAll(Query query) {
     List<T> entities = new ArrayList<>();
 
-    try (PreparedStatement pst = conn.prepareStatement(query.toString()); ResultSet rs = query.execute(pst)) {
+    try (Connection conn = getConnection();
+        PreparedStatement pst = conn.prepareStatement(query.toString());
+        ResultSet rs = query.execute(pst)) {
       while (rs.next()) {
         entities.add(hydrate(rs));
       }
@@ -154,6 +226,95 @@ public abstract class Manager<T extends Entity> {
     return entities;
   }
 
+  /**
+   * Excute la requte et renvoie les entits slectionnes sous la forme d'un
+   * flux, hydrates au fur et  mesure de leur lecture : la mmoire utilise ne
+   * dpend pas du nombre de lignes. Les lignes sont lues par paquets de
+   * Config.DB_FETCH_SIZE via un curseur en lecture seule, en avant uniquement.
+   *
+   * Le flux dtient une connexion jusqu' sa fermeture : il doit tre ferm
+   * (idalement via un try-with-resources), y compris s'il n'est pas parcouru
+   * jusqu'au bout. Il est ferm automatiquement une fois entirement parcouru.
+   * Il doit tre parcouru et ferm par le thread qui l'a cr. Un flux abandonn
+   * sans avoir t ferm ni entirement parcouru garde sa connexion jusqu' ce
+   * que le ramasse-miettes le collecte : ses ressources sont alors libres par
+   * le thread "stream-reaper" (voir Resources), ce qui peut prendre du temps.
+   *
+   * @param query la requte  effectuer
+   * @return le flux des entits rcupres par la requte
+   */
+  public Stream<T> stream(Query query) {
+    Connection conn = null;
+    PreparedStatement pst = null;
+    ResultSet rs = null;
+
+    try {
+      conn = getConnection();
+      pst = conn.prepareStatement(query.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      pst.setFetchSize(Config.DB_FETCH_SIZE);
+      rs = query.execute(pst);
+    } catch (SQLException e) {
+      e.printStackTrace();
+      new Resources(conn, pst, rs).close();
+      return Stream.empty();
+    }
+
+    ResultIterator iterator = new ResultIterator(new Resources(conn, pst, rs));
+    return StreamSupport
+        .stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+        .onClose(iterator::close);
+  }
+
+  /**
+   * Excute la requte et applique une action  chaque entit slectionne, au
+   * fur et  mesure de leur lecture (voir stream). Les ressources sont libres
+   *  la fin du parcours, mme si l'action lve une exception.
+   *
+   * @param query  la requte  effectuer
+   * @param action l'action  appliquer  chaque entit
+   */
+  public void forEach(Query query, Consumer<? super T> action) {
+    try (Stream<T> entities = stream(query)) {
+      entities.forEach(action);
+    }
+  }
+
+  /**
+   * Excute la requte et passe chaque ligne  un traitement, sans hydrater
+   * d'entit (pour lire des colonnes directement dans des types primitifs par
+   * exemple). Les lignes sont lues par paquets, comme pour stream.
+   *
+   * @param query   la requte  effectuer
+   * @param handler le traitement appliqu  chaque ligne
+   */
+  protected void forEachRow(Query query, RowHandler handler) {
+    try (Connection conn = getConnection();
+        PreparedStatement pst = conn.prepareStatement(query.toString(), ResultSet.TYPE_FORWARD_ONLY,
+            ResultSet.CONCUR_READ_ONLY)) {
+      pst.setFetchSize(Config.DB_FETCH_SIZE);
+      try (ResultSet rs = query.execute(pst)) {
+        while (rs.next()) {
+          handler.handle(rs);
+        }
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Excute une requte ne renvoyant qu'un nombre (un COUNT(*) par exemple).
+   *
+   * @param query la requte  effectuer
+   * @return le nombre renvoy par la requte (0 si aucune ligne)
+   */
+  protected long count(Query query) {
+    long[] count = { 0 };
+    forEachRow(query, rs -> count[0] = rs.getLong(1));
+
+    return count[0];
+  }
+
   /**
    * Insre l'objet dans la base de donnes.
    *
@@ -162,17 +323,17 @@ public abstract class Manager<T extends Entity> {
   public void insert(T entity) {
     if (entity == null) return;
 
-    String q = generateInsertQuery();
+    String q = getInsertQuery(1);
 
-    try (PreparedStatement pst = conn.prepareStatement(q, Statement.RETURN_GENERATED_KEYS)) {
+    try (Connection conn = getConnection();
+        PreparedStatement pst = conn.prepareStatement(q, Statement.RETURN_GENERATED_KEYS)) {
       dehydrate(pst, entity);
       pst.executeUpdate();
       try (ResultSet keys = pst.getGeneratedKeys()) {
-        if (keys.first()) {
-          // L'entit a maintenant un ID : on lui donne
-          entity.setId(keys.getInt(1));
-        }
+        // L'entit a maintenant un ID : on lui donne
+        if (keys.first()) entity.setId(keys.getLong(1));
       }
+      entity.markClean();
     } catch (SQLException e) {
       e.printStackTrace();
     }
@@ -186,12 +347,14 @@ public abstract class Manager<T extends Entity> {
   public void delete(T entity) {
     if (entity == null) return;
 
-    String query = "DELETE FROM " + table + " WHERE id=" + entity.getId();
+    if (deleteQuery == null) deleteQuery = "DELETE FROM " + table + " WHERE id = ?";
 
-    try (Statement st = conn.createStatement()) {
-      st.executeUpdate(query);
+    try (Connection conn = getConnection(); PreparedStatement pst = conn.prepareStatement(deleteQuery)) {
+      pst.setLong(1, entity.getId());
+      pst.executeUpdate();
       // L'entit n'est plus dans la base, elle n'a donc plus d'ID
       entity.setId(0);
+      entity.markDirty();
     } catch (SQLException e) {
       e.printStackTrace();
     }
@@ -205,11 +368,14 @@ public abstract class Manager<T extends Entity> {
   public void update(T entity) {
     if (entity == null) return;
 
-    String query = generateUpdateQuery(entity.getId());
+    if (updateQuery == null) updateQuery = generateUpdateQuery();
 
-    try (PreparedStatement pst = conn.prepareStatement(query)) {
+    try (Connection conn = getConnection(); PreparedStatement pst = conn.prepareStatement(updateQuery)) {
       dehydrate(pst, entity);
+      // L'ID est le dernier paramtre, aprs les colonnes
+      pst.setLong(columns.length + 1, entity.getId());
       pst.executeUpdate();
+      entity.markClean();
     } catch (SQLException e) {
       e.printStackTrace();
     }
@@ -218,30 +384,55 @@ public abstract class Manager<T extends Entity> {
   /**
    * Gnre la requte d'insertion dans la base.
    *
+   * @param nbRows le nombre d'enregistrements insrs par la requte
    * @return la chane reprsentant la requte SQL prpare d'insertion
    */
-  private String generateInsertQuery() {
+  protected String generateInsertQuery(int nbRows) {
     String[] interrogationMarks = new String[columns.length];
     for (int i = 0; i < columns.length; ++i) {
       interrogationMarks[i] = "?";
     }
+    String row = "(" + String.join(", ", interrogationMarks) + ")";
+
+    String[] rows = new String[nbRows];
+    for (int i = 0; i < nbRows; ++i) {
+      rows[i] = row;
+    }
+
+    return "INSERT INTO " + table + "(" + String.join(", ", columns) + ") VALUES" + String.join(", ", rows);
+  }
+
+  /**
+   * Renvoie la requte d'insertion dans la base, gnre au premier appel pour
+   * chaque nombre de lignes (dans la limite de MAX_INSERT_SHAPES formes
+   * diffrentes : les lots ont en pratique presque toujours la mme taille).
+   *
+   * @param nbRows le nombre d'enregistrements insrs par la requte
+   * @return la chane reprsentant la requte SQL prpare d'insertion
+   */
+  protected String getInsertQuery(int nbRows) {
+    String q = insertQueries.get(nbRows);
+    if (q == null) {
+      q = generateInsertQuery(nbRows);
+      if (insertQueries.size() < MAX_INSERT_SHAPES) insertQueries.put(nbRows, q);
+    }
 
-    return "INSERT INTO " + table + "(" + String.join(", ", columns) + ") VALUES("
-        + String.join(", ", interrogationMarks) + ")";
+    return q;
   }
 
   /**
-   * Gnre la requte de mise  jour de la table.
+   * Gnre la requte de mise  jour de la table. L'ID de l'enregistrement 
+   * mettre  jour est le dernier paramtre.
    *
-   * @param id l'ID de l'enregistrement  mettre  jour
    * @return la chane reprsentant la requte SQL prpare de mise  jour
    */
-  private String generateUpdateQuery(int id) {
-    return "UPDATE " + table + " SET " + String.join("=?, ", columns) + "=? WHERE id=" + id;
+  private String generateUpdateQuery() {
+    return "UPDATE " + table + " SET " + String.join("=?, ", columns) + "=? WHERE id = ?";
   }
 
   /**
    * Cre une nouvelle instance de T en l'hydratant avec les valeurs du ResultSet.
+   * L'entit renvoye doit tre marque comme non modifie (markClean).
    *
    * @param rs Les rsultats de la requte.
    * @return Une nouvelle entit hydrate.
@@ -257,4 +448,233 @@ public abstract class Manager<T extends Entity> {
    */
   protected abstract void dehydrate(PreparedStatement pst, T entity);
 
+
+  /**
+   * Traitement appliqu  une ligne de rsultat par forEachRow.
+   */
+  @FunctionalInterface
+  protected static interface RowHandler {
+
+    /**
+     * Traite la ligne courante.
+     *
+     * @param rs les rsultats, positionns sur la ligne  traiter
+     * @throws SQLException
+     */
+    void handle(ResultSet rs) throws SQLException;
+
+  }
+
+  /**
+   * Parcourt un ResultSet en hydratant les entits  la demande et libre ses
+   * ressources  la fin du parcours ou  la fermeture.
+   */
+  private class ResultIterator implements Iterator<T> {
+
+    /**
+     * Les ressources parcourues.
+     */
+    private final Resources resources;
+
+    /**
+     * Rfrence permettant de librer les ressources si l'itrateur est
+     * abandonn.
+     */
+    private final Reclaimer reclaimer;
+
+    /**
+     * Indique si la ligne courante du ResultSet n'a pas encore t renvoye.
+     */
+    private boolean pending = false;
+
+    /**
+     * Constructeur.
+     *
+     * @param resources les ressources  parcourir
+     */
+    private ResultIterator(Resources resources) {
+      this.resources = resources;
+      this.reclaimer = new Reclaimer(this, resources);
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (resources.closed) return false;
+      if (pending) return true;
+
+      try {
+        pending = resources.rs.next();
+      } catch (SQLException e) {
+        e.printStackTrace();
+        pending = false;
+      }
+      if (!pending) close();
+
+      return pending;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) throw new NoSuchElementException();
+
+      pending = false;
+      return hydrate(resources.rs);
+    }
+
+    /**
+     * Libre les ressources (sans effet si dj fait).
+     */
+    private void close() {
+      reclaimer.forget();
+      resources.close();
+    }
+
+  }
+
+  /**
+   * Ressources dtenues par un flux. Elles ne rfrencent pas l'itrateur du
+   * flux : celui-ci peut donc tre collect s'il est abandonn, et ses
+   * ressources tre libres par le thread "stream-reaper".
+   */
+  private static class Resources {
+
+    /**
+     * La connexion emprunte.
+     */
+    private final Connection conn;
+
+    /**
+     * La requte prpare.
+     */
+    private final PreparedStatement pst;
+
+    /**
+     * Les rsultats.
+     */
+    private final ResultSet rs;
+
+    /**
+     * Indique si les ressources ont t libres.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructeur.
+     *
+     * @param conn la connexion emprunte
+     * @param pst  la requte prpare
+     * @param rs   les rsultats
+     */
+    private Resources(Connection conn, PreparedStatement pst, ResultSet rs) {
+      this.conn = conn;
+      this.pst = pst;
+      this.rs = rs;
+    }
+
+    /**
+     * Ferme le ResultSet, la requte et rend la connexion, dans cet ordre (sans
+     * effet si dj fait). Une erreur lors d'une fermeture n'empche pas les
+     * suivantes.
+     */
+    private synchronized void close() {
+      if (closed) return;
+      closed = true;
+
+      if (rs != null) {
+        try {
+          rs.close();
+        } catch (SQLException e) {
+          e.printStackTrace();
+        }
+      }
+      if (pst != null) {
+        try {
+          pst.close();
+        } catch (SQLException e) {
+          e.printStackTrace();
+        }
+      }
+      if (conn != null) {
+        try {
+          conn.close();
+        } catch (SQLException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+
+  }
+
+  /**
+   * Rfrence fantme vers l'itrateur d'un flux : une fois l'itrateur
+   * collect sans avoir t ferm, le thread "stream-reaper" libre les
+   * ressources associes.
+   */
+  private static class Reclaimer extends PhantomReference<Object> {
+
+    /**
+     * File des itrateurs collects.
+     */
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+
+    /**
+     * Rfrences en attente : elles doivent rester atteignables pour tre
+     * places dans la file.
+     */
+    private static final Set<Reclaimer> PENDING = ConcurrentHashMap.newKeySet();
+
+    static {
+      Thread reaper = new Thread(Reclaimer::reap, "stream-reaper");
+      reaper.setDaemon(true);
+      reaper.start();
+    }
+
+    /**
+     * Les ressources  librer.
+     */
+    private final Resources resources;
+
+    /**
+     * Constructeur.
+     *
+     * @param iterator  l'itrateur surveill
+     * @param resources les ressources  librer s'il est abandonn
+     */
+    private Reclaimer(Object iterator, Resources resources) {
+      super(iterator, QUEUE);
+      this.resources = resources;
+      PENDING.add(this);
+    }
+
+    /**
+     * Cesse de surveiller l'itrateur (ses ressources sont libres par
+     * ailleurs).
+     */
+    private void forget() {
+      PENDING.remove(this);
+      clear();
+    }
+
+    /**
+     * Libre les ressources des itrateurs abandonns au fur et  mesure de leur
+     * collecte.
+     */
+    private static void reap() {
+      while (true) {
+        try {
+          Reference<?> ref = QUEUE.remove();
+          Reclaimer reclaimer = (Reclaimer) ref;
+          if (PENDING.remove(reclaimer) && !reclaimer.resources.closed) {
+            System.err.println("Flux non ferm collect, libration de sa connexion.");
+            reclaimer.resources.close();
+          }
+        } catch (InterruptedException e) {
+          return;
+        } catch (RuntimeException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+
+  }
 }
@@ -0,0 +1,271 @@
+package managers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import database.MySQLConnection;
+import entities.Fluid;
+
+/**
+ * Entretient le partitionnement par intervalles de dates (RANGE COLUMNS sur
+ * date_time) de la table value.
+ *
+ * Chaque partition est nomme d'aprs sa borne suprieure (pAAAAMMJJ) ; une
+ * dernire partition p_future (MAXVALUE) recueille les valeurs au-del. Une
+ * tche excute toutes les 12 heures cre  l'avance les partitions des
+ * priodes  venir, en dcoupant p_future (vide, donc sans recopie de donnes),
+ * et supprime les partitions dont toutes les valeurs ont expir : la purge se
+ * rsume alors  une opration sur les mtadonnes.
+ *
+ * Seule la table value (format STANDARD) est partitionne : les tables
+ * compactes restent purges ligne  ligne par le ValuePurger.
+ */
+public class PartitionMaintainer {
+
+  /**
+   * Priodes de partitionnement.
+   */
+  public static enum Period {
+    /**
+     * Pas de partitionnement.
+     */
+    NONE,
+
+    /**
+     * Une partition par semaine (du lundi au dimanche).
+     */
+    WEEK,
+
+    /**
+     * Une partition par mois.
+     */
+    MONTH;
+
+    /**
+     * Renvoie la borne de partition qui suit une date.
+     *
+     * @param date la date
+     * @return le dbut de la priode suivante
+     */
+    public LocalDate next(LocalDate date) {
+      switch (this) {
+        case WEEK: return date.with(TemporalAdjusters.next(DayOfWeek.MONDAY));
+        case MONTH: return date.with(TemporalAdjusters.firstDayOfNextMonth());
+        default: throw new IllegalStateException("No partitioning");
+      }
+    }
+  }
+
+  /**
+   * Nom de la partition recueillant les valeurs au-del de la dernire borne.
+   */
+  private static final String FUTURE_PARTITION = "p_future";
+
+  /**
+   * Dlai (en h) entre deux entretiens.
+   */
+  private static final long MAINTENANCE_PERIOD = 12;
+
+  /**
+   * Nom de la table partitionne.
+   */
+  private final String table;
+
+  /**
+   * Priode de partitionnement.
+   */
+  private final Period period;
+
+  /**
+   * Nombre de partitions  crer  l'avance au-del de la priode en cours.
+   */
+  private final int nbAhead;
+
+  /**
+   * Dure de conservation (en jours) des valeurs de chaque type de fluide.
+   */
+  private final Map<Fluid.Type, Integer> retentionDays;
+
+  /**
+   * Thread effectuant l'entretien.
+   */
+  private final ScheduledExecutorService scheduler;
+
+  /**
+   * Constructeur. Dmarre l'entretien priodique.
+   *
+   * @param vm            le ValueManager
+   * @param period        la priode de partitionnement
+   * @param nbAhead       le nombre de partitions  crer  l'avance
+   * @param retentionDays la dure de conservation (en jours) des valeurs de
+   *                      chaque type de fluide
+   */
+  public PartitionMaintainer(ValueManager vm, Period period, int nbAhead, Map<Fluid.Type, Integer> retentionDays) {
+    this.table = vm.getTable();
+    this.period = period;
+    this.nbAhead = Math.max(1, nbAhead);
+    this.retentionDays = retentionDays;
+
+    scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "partition-maintainer");
+      t.setDaemon(true);
+      return t;
+    });
+    scheduler.scheduleWithFixedDelay(this::maintain, 0, MAINTENANCE_PERIOD, TimeUnit.HOURS);
+  }
+
+  /**
+   * Arrte l'entretien priodique.
+   */
+  public void stop() {
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * Cre les partitions  venir et supprime les partitions expires.
+   */
+  public void maintain() {
+    try (Connection conn = MySQLConnection.getConnection()) {
+      List<LocalDate> bounds = getBounds(conn);
+      if (bounds == null) {
+        System.err.println("La table " + table + " n'est pas partitionne (voir upgrades/004_value_partitioning.sql)");
+        return;
+      }
+
+      createAhead(conn, bounds);
+      dropExpired(conn, bounds);
+    } catch (SQLException | RuntimeException e) {
+      // Le thread priodique ne doit pas s'arrter sur une erreur
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Lit les bornes suprieures des partitions de la table, hors p_future.
+   *
+   * @param conn la connexion  utiliser
+   * @return les bornes tries, ou null si la table n'est pas partitionne
+   * @throws SQLException
+   */
+  private List<LocalDate> getBounds(Connection conn) throws SQLException {
+    String q = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS"
+        + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL";
+
+    List<LocalDate> bounds = null;
+    try (PreparedStatement pst = conn.prepareStatement(q)) {
+      pst.setString(1, table);
+      try (ResultSet rs = pst.executeQuery()) {
+        while (rs.next()) {
+          if (bounds == null) bounds = new ArrayList<>();
+          // Description de la forme '2026-11-01' ou '2026-11-01 00:00:00'
+          String description = rs.getString(2).replace("'", "");
+          if (!description.startsWith("MAXVALUE")) {
+            bounds.add(LocalDate.parse(description.substring(0, 10)));
+          }
+        }
+      }
+    }
+
+    if (bounds != null) Collections.sort(bounds);
+    return bounds;
+  }
+
+  /**
+   * Cre les partitions manquantes jusqu' nbAhead priodes aprs la priode
+   * en cours.
+   *
+   * @param conn   la connexion  utiliser
+   * @param bounds les bornes des partitions existantes
+   * @throws SQLException
+   */
+  private void createAhead(Connection conn, List<LocalDate> bounds) throws SQLException {
+    LocalDate last = bounds.isEmpty() ? null : bounds.get(bounds.size() - 1);
+
+    List<String> partitions = new ArrayList<>();
+    LocalDate bound = period.next(LocalDate.now());
+    for (int i = 0; i <= nbAhead; ++i) {
+      if (last == null || bound.isAfter(last)) {
+        partitions.add(partition(bound));
+      }
+      bound = period.next(bound);
+    }
+    if (partitions.isEmpty()) return;
+
+    // p_future ne contient normalement aucune valeur : la dcouper ne
+    // recopie pas de donnes
+    partitions.add("PARTITION " + FUTURE_PARTITION + " VALUES LESS THAN (MAXVALUE)");
+    execute(conn, "ALTER TABLE " + table + " REORGANIZE PARTITION " + FUTURE_PARTITION + " INTO ("
+        + String.join(", ", partitions) + ")");
+  }
+
+  /**
+   * Supprime les partitions dont toutes les valeurs ont dpass leur dure de
+   * conservation. Une partition contenant les valeurs de tous les fluides, ce
+   * n'est possible que si tous les types de fluide ont une dure de
+   * conservation, et c'est la plus longue qui s'applique (les dures plus
+   * courtes sont assures par le ValuePurger).
+   *
+   * @param conn   la connexion  utiliser
+   * @param bounds les bornes des partitions existantes
+   * @throws SQLException
+   */
+  private void dropExpired(Connection conn, List<LocalDate> bounds) throws SQLException {
+    if (retentionDays.size() < Fluid.Type.values().length) return;
+
+    LocalDate cutoff = LocalDate.now().minusDays(Collections.max(retentionDays.values()));
+    List<String> expired = new ArrayList<>();
+    for (LocalDate bound : bounds) {
+      if (!bound.isAfter(cutoff)) expired.add(name(bound));
+    }
+    if (expired.isEmpty()) return;
+
+    execute(conn, "ALTER TABLE " + table + " DROP PARTITION " + String.join(", ", expired));
+  }
+
+  /**
+   * Gnre la dfinition d'une partition.
+   *
+   * @param bound la borne suprieure (exclue) de la partition
+   * @return la dfinition de la partition
+   */
+  private static String partition(LocalDate bound) {
+    return "PARTITION " + name(bound) + " VALUES LESS THAN ('" + bound + "')";
+  }
+
+  /**
+   * Gnre le nom d'une partition  partir de sa borne suprieure.
+   *
+   * @param bound la borne suprieure de la partition
+   * @return le nom de la partition
+   */
+  private static String name(LocalDate bound) {
+    return "p" + bound.toString().replace("-", "");
+  }
+
+  /**
+   * Excute une requte de modification du schma.
+   *
+   * @param conn la connexion  utiliser
+   * @param q    la requte
+   * @throws SQLException
+   */
+  private static void execute(Connection conn, String q) throws SQLException {
+    try (Statement st = conn.createStatement()) {
+      st.executeUpdate(q);
+    }
+  }
+
+}
@@ -0,0 +1,142 @@
+package managers;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import database.Entity;
+
+/**
+ * Cache en mmoire d'une table de rfrence (quelques lignes, presque jamais
+ * modifies), indexe par ID et par cl naturelle. Elle est charge en entier au
+ * premier accs puis tenue  jour par son manager ; invalidate force un
+ * rechargement au prochain accs.
+ *
+ * @param <T> le type des entits
+ */
+class ReferenceCache<T extends Entity> {
+
+  /**
+   * Entits indexes par ID.
+   */
+  private final Map<Long, T> byId = new ConcurrentHashMap<>();
+
+  /**
+   * Entits indexes par cl naturelle.
+   */
+  private final Map<String, T> byKey = new ConcurrentHashMap<>();
+
+  /**
+   * Calcule la cl naturelle d'une entit.
+   */
+  private final Function<T, String> key;
+
+  /**
+   * Charge toutes les entits de la table.
+   */
+  private final Supplier<Collection<T>> loader;
+
+  /**
+   * Indique si le cache a t rempli  partir de la base.
+   */
+  private volatile boolean loaded = false;
+
+  /**
+   * Verrou protgeant le remplissage du cache.
+   */
+  private final Lock loadLock = new ReentrantLock();
+
+  /**
+   * Constructeur.
+   *
+   * @param key    la fonction renvoyant la cl naturelle d'une entit
+   * @param loader la fonction chargeant toutes les entits de la table
+   */
+  ReferenceCache(Function<T, String> key, Supplier<Collection<T>> loader) {
+    this.key = key;
+    this.loader = loader;
+  }
+
+  /**
+   * Rcupre une entit  partir de son ID.
+   *
+   * @param id l'ID de l'entit
+   * @return l'entit ou null si elle est inconnue
+   */
+  T getById(long id) {
+    load();
+    return byId.get(id);
+  }
+
+  /**
+   * Rcupre une entit  partir de sa cl naturelle.
+   *
+   * @param k la cl naturelle
+   * @return l'entit ou null si elle est inconnue
+   */
+  T getByKey(String k) {
+    load();
+    return k == null ? null : byKey.get(k);
+  }
+
+  /**
+   * Ajoute ou met  jour une entit prsente dans la base.
+   *
+   * @param entity l'entit (son ID doit tre non nul)
+   */
+  void put(T entity) {
+    if (entity == null || entity.getId() == 0) return;
+
+    T old = byId.put(entity.getId(), entity);
+    // La cl naturelle a pu changer : on retire l'ancienne entre
+    byKey.values().remove(old == null ? entity : old);
+    String k = key.apply(entity);
+    if (k != null) byKey.put(k, entity);
+  }
+
+  /**
+   * Retire une entit du cache.
+   *
+   * @param id l'ID de l'entit
+   */
+  void remove(long id) {
+    T old = byId.remove(id);
+    if (old != null) byKey.values().remove(old);
+  }
+
+  /**
+   * Vide le cache, qui sera recharg depuis la base au prochain accs.
+   */
+  void invalidate() {
+    loadLock.lock();
+    try {
+      loaded = false;
+      byId.clear();
+      byKey.clear();
+    } finally {
+      loadLock.unlock();
+    }
+  }
+
+  /**
+   * Remplit le cache depuis la base s'il ne l'est pas encore.
+   */
+  private void load() {
+    if (loaded) return;
+
+    loadLock.lock();
+    try {
+      if (!loaded) {
+        loader.get().forEach(this::put);
+        loaded = true;
+      }
+    } finally {
+      loadLock.unlock();
+    }
+  }
+
+}
@@ -0,0 +1,475 @@
+package managers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import database.Query;
+import entities.Rollup;
+import entities.Sensor;
+import entities.Value;
+
+/**
+ * Gre une table d'agrgats de valeurs (minimum, maximum, somme, nombre et
+ * dernire valeur par capteur et par intervalle de temps).
+ *
+ * Les agrgats sont tenus  jour  chaque insertion de valeurs : les valeurs
+ * d'un lot sont d'abord agrges en mmoire puis fusionnes avec les agrgats
+ * existants par un INSERT ... ON DUPLICATE KEY UPDATE. Une table par
+ * rsolution ; c'est le ValueManager qui cre et utilise ces managers.
+ *
+ * Les valeurs enregistres avant l'activation des agrgats n'y figurent pas
+ * tant qu'ils n'ont pas t recalculs (voir backfill) : getFirstBucket indique
+ *  partir de quand les agrgats d'un capteur sont complets.
+ */
+public class RollupManager extends Manager<Rollup> {
+
+  /**
+   * Nombre maximal d'agrgats par requte (8 paramtres par agrgat, MySQL
+   * limitant une requte prpare  65535 paramtres).
+   */
+  private static final int MAX_ROWS = 5000;
+
+  /**
+   * Rsolutions des agrgats, de la plus fine  la plus grossire. Les
+   * intervalles sont aligns sur l'epoch (les jours commencent donc  minuit
+   * UTC).
+   */
+  public static enum Resolution {
+    MINUTE("value_rollup_minute", 60000L),
+    HOUR("value_rollup_hour", 3600000L),
+    DAY("value_rollup_day", 86400000L);
+
+    /**
+     * Table des agrgats.
+     */
+    private final String table;
+
+    /**
+     * Dure d'un intervalle (en ms).
+     */
+    private final long duration;
+
+    /**
+     * Constructeur.
+     *
+     * @param table    la table des agrgats
+     * @param duration la dure d'un intervalle (en ms)
+     */
+    private Resolution(String table, long duration) {
+      this.table = table;
+      this.duration = duration;
+    }
+
+    /**
+     * Getter duration.
+     *
+     * @return duration
+     */
+    public long getDuration() {
+      return duration;
+    }
+
+    /**
+     * Renvoie le dbut de l'intervalle contenant une date.
+     *
+     * @param time la date (en ms)
+     * @return le dbut de l'intervalle (en ms)
+     */
+    public long bucketStart(long time) {
+      return Math.floorDiv(time, duration) * duration;
+    }
+
+    /**
+     * Ajoute  une srie le minimum et le maximum d'un intervalle : le minimum
+     *  son dbut, le maximum en son milieu. Un intervalle n'occupant pas plus
+     * d'un point  l'affichage, la courbe montre ainsi l'amplitude des valeurs
+     * et pas seulement leur moyenne.
+     *
+     * @param series la srie  complter
+     * @param bucket le dbut de l'intervalle (en ms)
+     * @param min    la plus petite valeur de l'intervalle
+     * @param max    la plus grande valeur de l'intervalle
+     */
+    public void addEnvelope(ValueSeries series, long bucket, double min, double max) {
+      series.add(bucket, min);
+      if (max != min) series.add(bucket + duration / 2, max);
+    }
+
+    /**
+     * Renvoie la rsolution la plus grossire donnant au moins nbPoints
+     * intervalles sur une dure.
+     *
+     * @param range    la dure (en ms)
+     * @param nbPoints le nombre de points voulus
+     * @return la rsolution, ou null si mme la plus fine ne donne pas assez de
+     *         points (il faut alors lire les valeurs brutes)
+     */
+    public static Resolution coarsestFor(long range, int nbPoints) {
+      Resolution[] resolutions = values();
+      for (int i = resolutions.length - 1; i >= 0; --i) {
+        if (range / resolutions[i].duration >= nbPoints) {
+          return resolutions[i];
+        }
+      }
+
+      return null;
+    }
+  }
+
+  /**
+   * La rsolution des agrgats grs.
+   */
+  private final Resolution resolution;
+
+  /**
+   * Dbut du premier agrgat de chaque capteur (en ms), lu  la demande.
+   */
+  private final Map<Long, Long> firstBuckets = new ConcurrentHashMap<>();
+
+  /**
+   * Constructeur.
+   *
+   * @param resolution la rsolution des agrgats grs
+   */
+  public RollupManager(Resolution resolution) {
+    super(resolution.table, new String[] { "sensor_id", "bucket", "min_value", "max_value", "sum_value",
+        "nb_values", "last_value", "last_ts" });
+    this.resolution = resolution;
+  }
+
+  /**
+   * Getter resolution.
+   *
+   * @return resolution
+   */
+  public Resolution getResolution() {
+    return resolution;
+  }
+
+  /**
+   * Ajoute des valeurs (dj crites dans la base) aux agrgats. Appele dans
+   * la transaction qui crit les valeurs, elle utilise la mme connexion (voir
+   * Manager.getConnection) : valeurs et agrgats sont valids ensemble.
+   *
+   * @param values les valeurs
+   * @throws SQLException si les agrgats n'ont pas pu tre crits
+   */
+  public void addAll(Collection<Value> values) throws SQLException {
+    // Agrgation du lot en mmoire : une ligne par capteur et par intervalle
+    Map<Long, Map<Long, Rollup>> bySensor = new HashMap<>();
+    List<Rollup> rollups = new ArrayList<>();
+    for (Value value : values) {
+      Sensor sensor = value.getSensor();
+      if (sensor == null || sensor.getId() == 0 || value.getDateTime() == null) continue;
+
+      Map<Long, Rollup> byBucket = bySensor.computeIfAbsent(sensor.getId(), k -> new HashMap<>());
+      long bucket = resolution.bucketStart(value.getDateTime().getTime());
+      Rollup rollup = byBucket.get(bucket);
+      if (rollup == null) {
+        rollup = new Rollup(sensor, new Timestamp(bucket));
+        byBucket.put(bucket, rollup);
+        rollups.add(rollup);
+      }
+      rollup.add(value);
+    }
+
+    // Les lignes sont verrouilles dans l'ordre de la cl primaire : deux lots
+    // concurrents les verrouillent dans le mme ordre et ne peuvent pas se
+    // bloquer mutuellement
+    rollups.sort(Comparator.comparingLong((Rollup r) -> r.getSensor().getId())
+        .thenComparingLong(r -> r.getStart().getTime()));
+
+    for (int from = 0; from < rollups.size(); from += MAX_ROWS) {
+      merge(rollups.subList(from, Math.min(from + MAX_ROWS, rollups.size())));
+    }
+  }
+
+  /**
+   * Rcupre les agrgats d'un capteur dont l'intervalle intersecte [t1, t2],
+   * tris par date.
+   *
+   * @param sensorId l'ID du capteur
+   * @param t1       la date de dbut
+   * @param t2       la date de fin
+   * @return les agrgats
+   */
+  public List<Rollup> findAllBySensorBetween(long sensorId, Timestamp t1, Timestamp t2) {
+    return fetchAll(betweenQuery(baseQuery(), sensorId, t1, t2));
+  }
+
+  /**
+   * Rcupre sous forme de colonnes le minimum et le maximum de chaque agrgat
+   * d'un capteur dont l'intervalle intersecte [t1, t2] (voir
+   * Resolution.addEnvelope).
+   *
+   * @param sensorId l'ID du capteur
+   * @param t1       la date de dbut
+   * @param t2       la date de fin
+   * @return la srie des minimums et maximums, trie par date
+   */
+  public ValueSeries findSeriesBySensorBetween(long sensorId, Timestamp t1, Timestamp t2) {
+    Query query = new Query()
+      .select(getTable() + ".bucket", getTable() + ".min_value", getTable() + ".max_value")
+      .from(getTable());
+    ValueSeries series = new ValueSeries();
+    forEachRow(betweenQuery(query, sensorId, t1, t2),
+        rs -> resolution.addEnvelope(series, rs.getLong(1), rs.getDouble(2), rs.getDouble(3)));
+
+    return series;
+  }
+
+  /**
+   * Renvoie le dbut du premier agrgat d'un capteur. Les valeurs antrieures
+   * (enregistres avant l'activation des agrgats et non recalcules) ne se
+   * trouvent que dans les tables de valeurs brutes.
+   *
+   * @param sensorId l'ID du capteur
+   * @return le dbut du premier agrgat (en ms), ou Long.MAX_VALUE si le
+   *         capteur n'en a aucun
+   */
+  public long getFirstBucket(long sensorId) {
+    Long first = firstBuckets.get(sensorId);
+    if (first != null) return first;
+
+    long[] min = { Long.MAX_VALUE };
+    Query query = new Query()
+      .select(Query.Aggregate.MIN, getTable() + ".bucket")
+      .from(getTable())
+      .where(getTable() + ".sensor_id = ?").params(sensorId);
+    forEachRow(query, rs -> {
+      long bucket = rs.getLong(1);
+      if (!rs.wasNull()) min[0] = bucket;
+    });
+
+    // Un capteur sans agrgat n'est pas mmoris : la table sera relue
+    if (min[0] != Long.MAX_VALUE) firstBuckets.merge(sensorId, min[0], Math::min);
+    return min[0];
+  }
+
+  /**
+   * Complte une requte pour rcuprer les agrgats d'un capteur dont
+   * l'intervalle intersecte [t1, t2], tris par date.
+   *
+   * @param query    la requte  complter
+   * @param sensorId l'ID du capteur
+   * @param t1       la date de dbut
+   * @param t2       la date de fin
+   * @return la requte
+   */
+  private Query betweenQuery(Query query, long sensorId, Timestamp t1, Timestamp t2) {
+    return query
+      .where(getTable() + ".sensor_id = ?").params(sensorId)
+      .where(getTable() + ".bucket BETWEEN ? AND ?").params(resolution.bucketStart(t1.getTime()), t2.getTime())
+      .orderBy(getTable() + ".bucket", Query.Order.ASC);
+  }
+
+  /**
+   * Recalcule tous les agrgats d'un capteur :  partir des valeurs brutes pour
+   * la rsolution la plus fine,  partir des agrgats de la rsolution
+   * prcdente sinon (qui doivent donc avoir t recalculs avant). Les
+   * agrgats existants sont remplacs.
+   *
+   * Aucune valeur du capteur ne doit tre insre pendant le calcul. La
+   * conversion des dates de la table value en millisecondes utilise le fuseau
+   * horaire de la session MySQL, qui doit tre celui de l'application.
+   *
+   * @param sensorId l'ID du capteur
+   */
+  public void backfill(long sensorId) {
+    String source;
+    String select;
+    int nbParams;
+    if (resolution == Resolution.MINUTE) {
+      // Valeurs brutes de toutes les tables (un fluide a pu changer de
+      // format de stockage)
+      source = "(SELECT value, UNIX_TIMESTAMP(date_time) * 1000 AS ts FROM value"
+          + " WHERE sensor_id = ? AND value IS NOT NULL"
+          + " UNION ALL SELECT value, ts FROM value_compact WHERE sensor_id = ?"
+          + " UNION ALL SELECT value, ts FROM value_compact_float WHERE sensor_id = ?) v";
+      select = "MIN(value), MAX(value), SUM(value), COUNT(*),"
+          + " SUBSTRING_INDEX(GROUP_CONCAT(value ORDER BY ts DESC), ',', 1) + 0, MAX(ts)";
+      nbParams = 3;
+    } else {
+      Resolution finer = Resolution.values()[resolution.ordinal() - 1];
+      source = "(SELECT * FROM " + finer.table + " WHERE sensor_id = ?) v";
+      select = "MIN(min_value), MAX(max_value), SUM(sum_value), SUM(nb_values),"
+          + " SUBSTRING_INDEX(GROUP_CONCAT(last_value ORDER BY last_ts DESC), ',', 1) + 0, MAX(last_ts)";
+      nbParams = 1;
+    }
+    String bucket = "FLOOR(" + (resolution == Resolution.MINUTE ? "ts" : "bucket") + " / " + resolution.duration
+        + ") * " + resolution.duration;
+
+    String q = "INSERT INTO " + getTable() + "(" + String.join(", ", columns) + ")"
+        + " SELECT ?, " + bucket + " AS b, " + select + " FROM " + source + " GROUP BY b"
+        + " ON DUPLICATE KEY UPDATE min_value = VALUES(min_value), max_value = VALUES(max_value),"
+        + " sum_value = VALUES(sum_value), nb_values = VALUES(nb_values),"
+        + " last_value = VALUES(last_value), last_ts = VALUES(last_ts)";
+
+    try (Connection conn = getConnection(); PreparedStatement pst = conn.prepareStatement(q)) {
+      for (int i = 1; i <= nbParams + 1; ++i) {
+        pst.setLong(i, sensorId);
+      }
+      pst.executeUpdate();
+      firstBuckets.remove(sensorId);
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Remplace un agrgat, identifi par son capteur et son intervalle.
+   *
+   * @param entity l'agrgat  mettre  jour
+   */
+  @Override
+  public void update(Rollup entity) {
+    if (entity == null || entity.getSensor() == null) return;
+
+    String q = "UPDATE " + getTable() + " SET min_value = ?, max_value = ?, sum_value = ?, nb_values = ?,"
+        + " last_value = ?, last_ts = ? WHERE sensor_id = ? AND bucket = ?";
+
+    try (Connection conn = getConnection(); PreparedStatement pst = conn.prepareStatement(q)) {
+      pst.setDouble(1, entity.getMin());
+      pst.setDouble(2, entity.getMax());
+      pst.setDouble(3, entity.getSum());
+      pst.setLong(4, entity.getCount());
+      pst.setDouble(5, entity.getLast());
+      pst.setLong(6, entity.getLastDateTime() == null ? 0 : entity.getLastDateTime().getTime());
+      pst.setLong(7, entity.getSensor().getId());
+      pst.setLong(8, entity.getStart().getTime());
+      pst.executeUpdate();
+      entity.markClean();
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Supprime un agrgat, identifi par son capteur et son intervalle.
+   *
+   * @param entity l'agrgat  supprimer
+   */
+  @Override
+  public void delete(Rollup entity) {
+    if (entity == null || entity.getSensor() == null) return;
+
+    String q = "DELETE FROM " + getTable() + " WHERE sensor_id = ? AND bucket = ?";
+
+    try (Connection conn = getConnection(); PreparedStatement pst = conn.prepareStatement(q)) {
+      pst.setLong(1, entity.getSensor().getId());
+      pst.setLong(2, entity.getStart().getTime());
+      pst.executeUpdate();
+      entity.markDirty();
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Un agrgat dj prsent pour le mme capteur et le mme intervalle est
+   * fusionn avec le nouveau. Les affectations de l'UPDATE tant values dans
+   * l'ordre, last_value doit tre mise  jour avant last_ts.
+   * {@inheritDoc}
+   */
+  @Override
+  protected String generateInsertQuery(int nbRows) {
+    return super.generateInsertQuery(nbRows)
+        + " ON DUPLICATE KEY UPDATE min_value = LEAST(min_value, VALUES(min_value)),"
+        + " max_value = GREATEST(max_value, VALUES(max_value)),"
+        + " sum_value = sum_value + VALUES(sum_value), nb_values = nb_values + VALUES(nb_values),"
+        + " last_value = IF(VALUES(last_ts) >= last_ts, VALUES(last_value), last_value),"
+        + " last_ts = GREATEST(last_ts, VALUES(last_ts))";
+  }
+
+  /**
+   * Fusionne des agrgats avec ceux de la base en une seule requte.
+   *
+   * @param rollups les agrgats  fusionner, tris par capteur puis par date
+   * @throws SQLException si les agrgats n'ont pas pu tre crits
+   */
+  private void merge(List<Rollup> rollups) throws SQLException {
+    String q = getInsertQuery(rollups.size());
+
+    try (Connection conn = getConnection(); PreparedStatement pst = conn.prepareStatement(q)) {
+      int i = 0;
+      for (Rollup rollup : rollups) {
+        dehydrate(pst, i, rollup);
+        i += columns.length;
+      }
+      pst.executeUpdate();
+
+      for (Rollup rollup : rollups) {
+        rollup.markClean();
+        firstBuckets.computeIfPresent(rollup.getSensor().getId(),
+            (k, first) -> Math.min(first, rollup.getStart().getTime()));
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected Rollup hydrate(ResultSet rs) {
+    Rollup rollup = null;
+
+    try {
+      long sensorId = rs.getLong(getTable() + ".sensor_id");
+      long bucket = rs.getLong(getTable() + ".bucket");
+
+      rollup = new Rollup(mc.get(SensorManager.class).find(sensorId), new Timestamp(bucket));
+      rollup.setMin(rs.getDouble(getTable() + ".min_value"));
+      rollup.setMax(rs.getDouble(getTable() + ".max_value"));
+      rollup.setSum(rs.getDouble(getTable() + ".sum_value"));
+      rollup.setCount(rs.getLong(getTable() + ".nb_values"));
+      rollup.setLast(rs.getDouble(getTable() + ".last_value"), new Timestamp(rs.getLong(getTable() + ".last_ts")));
+      rollup.markClean();
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+
+    return rollup;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void dehydrate(PreparedStatement pst, Rollup entity) {
+    try {
+      dehydrate(pst, 0, entity);
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Injecte un agrgat dans une requte multi-lignes.
+   *
+   * @param pst    la requte prpare
+   * @param offset le nombre de paramtres prcdant ceux de l'agrgat
+   * @param entity l'agrgat
+   * @throws SQLException
+   */
+  private void dehydrate(PreparedStatement pst, int offset, Rollup entity) throws SQLException {
+    pst.setLong(offset + 1, entity.getSensor().getId());
+    pst.setLong(offset + 2, entity.getStart().getTime());
+    pst.setDouble(offset + 3, entity.getMin());
+    pst.setDouble(offset + 4, entity.getMax());
+    pst.setDouble(offset + 5, entity.getSum());
+    pst.setLong(offset + 6, entity.getCount());
+    pst.setDouble(offset + 7, entity.getLast());
+    pst.setLong(offset + 8, entity.getLastDateTime() == null ? 0 : entity.getLastDateTime().getTime());
+  }
+
+}
@@ -4,11 +4,20 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import database.Query;
 import entities.Building;
 import entities.Fluid;
 import entities.Sensor;
+import entities.Value;
 import proxies.SensorProxy;
 
 /**
@@ -16,6 +25,32 @@ import proxies.SensorProxy;
  */
 public class SensorManager extends Manager<Sensor> {
 
+  /**
+   * Nombre maximal d'IDs dans une clause IN.
+   */
+  private static final int MAX_IN_IDS = 1000;
+
+  /**
+   * Registre en mmoire des capteurs de la base.
+   */
+  private final SensorRegistry registry = new SensorRegistry();
+
+  /**
+   * Indique si le registre a t rempli  partir de la base.
+   */
+  private volatile boolean registryLoaded = false;
+
+  /**
+   * Verrou protgeant le premier remplissage du registre.
+   */
+  private final Lock registryLock = new ReentrantLock();
+
+  /**
+   * Thread de purge supprimant les valeurs des capteurs supprims (null si
+   * aucun : la cascade les supprime alors avec le capteur).
+   */
+  private volatile ValuePurger purger;
+
   /**
    * Constructeur.
    */
@@ -24,16 +59,151 @@ public class SensorManager extends Manager<Sensor> {
         new String[] { "name", "floor", "place", "fluid_id", "building_id", "min_threshold", "max_threshold" });
   }
 
+  /**
+   * Rcupre un capteur  partir de son nom, depuis le registre en mmoire (sans
+   * accs  la base une fois le registre charg).
+   *
+   * @param name le nom du capteur (ventuellement une vue sur un tampon, voir
+   *             SensorRegistry)
+   * @return le capteur ou null s'il n'existe pas
+   */
+  public Sensor findByName(CharSequence name) {
+    return getRegistry().getByName(name);
+  }
+
+  /**
+   * Rcupre un capteur  partir de son ID, depuis le registre en mmoire.
+   * {@inheritDoc}
+   */
+  @Override
+  public Sensor find(long id) {
+    Sensor sensor = getRegistry().getById(id);
+    if (sensor == null) {
+      // Capteur ventuellement ajout  la base par un autre moyen
+      sensor = super.find(id);
+      registry.put(sensor);
+    }
+
+    return sensor;
+  }
+
+  /**
+   * Rcupre plusieurs capteurs  partir de leurs IDs : depuis le registre en
+   * mmoire, puis en une seule requte (par tranche de MAX_IN_IDS IDs) pour
+   * ceux qui n'y sont pas.
+   *
+   * @param ids les IDs des capteurs
+   * @return les capteurs trouvs, par ID
+   */
+  public Map<Long, Sensor> findAllById(Collection<Long> ids) {
+    Map<Long, Sensor> sensors = new HashMap<>();
+    List<Long> missing = new ArrayList<>();
+
+    SensorRegistry reg = getRegistry();
+    for (Long id : ids) {
+      Sensor sensor = reg.getById(id);
+      if (sensor != null) {
+        sensors.put(id, sensor);
+      } else {
+        missing.add(id);
+      }
+    }
+
+    // Capteurs ventuellement ajouts  la base par un autre moyen
+    for (int from = 0; from < missing.size(); from += MAX_IN_IDS) {
+      List<Long> chunk = missing.subList(from, Math.min(from + MAX_IN_IDS, missing.size()));
+      Query query = baseQuery()
+        .where(getTable() + ".id IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")")
+        .params(chunk.toArray());
+      for (Sensor sensor : fetchAll(query)) {
+        registry.put(sensor);
+        sensors.put(sensor.getId(), sensor);
+      }
+    }
+
+    return sensors;
+  }
+
+  /**
+   * Renvoie le registre des capteurs, en le remplissant depuis la base au
+   * premier appel.
+   *
+   * @return le registre des capteurs
+   */
+  public SensorRegistry getRegistry() {
+    if (!registryLoaded) {
+      registryLock.lock();
+      try {
+        if (!registryLoaded) {
+          findAll().forEach(registry::put);
+          registryLoaded = true;
+        }
+      } finally {
+        registryLock.unlock();
+      }
+    }
+
+    return registry;
+  }
+
+  /**
+   * Insre le capteur et l'ajoute au registre. {@inheritDoc}
+   */
+  @Override
+  public void insert(Sensor entity) {
+    super.insert(entity);
+    registry.put(entity);
+  }
+
+  /**
+   * Met  jour le capteur et le registre. {@inheritDoc}
+   */
+  @Override
+  public void update(Sensor entity) {
+    super.update(entity);
+    registry.put(entity);
+  }
+
+  /**
+   * Setter purger.
+   *
+   * @param purger le thread de purge supprimant les valeurs des capteurs
+   *               supprims
+   */
+  public void setPurger(ValuePurger purger) {
+    this.purger = purger;
+  }
+
+  /**
+   * Retire le capteur du registre et le supprime de la base. Avec un thread de
+   * purge, la suppression est faite en arrire-plan : les valeurs sont d'abord
+   * supprimes par petits lots, la cascade les supprimant sinon en une seule
+   * transaction qui verrouille longuement la table des valeurs. {@inheritDoc}
+   */
+  @Override
+  public void delete(Sensor entity) {
+    if (entity == null) return;
+
+    long id = entity.getId();
+    registry.remove(id);
+    ValuePurger p = purger;
+    if (id != 0 && p != null) {
+      p.deleteAllBySensor(id, () -> super.delete(entity));
+    } else {
+      super.delete(entity);
+    }
+  }
+
   /**
    * Redfinit la requte de base pour rcuprer le fluide et le btiment.
    * {@inheritDoc}
    */
   @Override
-  protected Query baseQuery() {
+  protected Query createBaseQuery() {
     String fTable = mc.get(FluidManager.class).getTable();
     String bTable = mc.get(BuildingManager.class).getTable();
 
-    return super.baseQuery()
+    return super.createBaseQuery()
       .join(fTable, getTable() + ".fluid_id = " + fTable + ".id")
       .join(bTable, getTable() + ".building_id = " + bTable + ".id");
   }
@@ -48,14 +218,15 @@ public class SensorManager extends Manager<Sensor> {
     BuildingManager bm = mc.get(BuildingManager.class);
 
     try {
-      int id = rs.getInt(getTable() + ".id");
+      long id = rs.getLong(getTable() + ".id");
       String name = rs.getString(getTable() + ".name");
       int floor = rs.getInt(getTable() + ".floor");
       String place = rs.getString(getTable() + ".place");
       double minThreshold = rs.getDouble(getTable() + ".min_threshold");
       double maxThreshold = rs.getDouble(getTable() + ".max_threshold");
 
-      // Cration du fluide et btiment  partir des rsultats de requte
+      // Fluide et btiment  partir des rsultats de requte : une instance
+      // dj charge est rutilise (voir IdentityMap)
       Fluid fluid = fm.hydrate(rs);
       Building building = bm.hydrate(rs);
 
@@ -68,6 +239,7 @@ public class SensorManager extends Manager<Sensor> {
       sensor.setBuilding(building);
       sensor.setMinThreshold(minThreshold);
       sensor.setMaxThreshold(maxThreshold);
+      sensor.markClean();
     } catch (SQLException e) {
       e.printStackTrace();
     }
@@ -90,34 +262,42 @@ public class SensorManager extends Manager<Sensor> {
       pst.setString(3, entity.getPlace());
       Fluid fluid = entity.getFluid();
       if (fluid != null) {
-        // Si pas dans la base, on l'insre sinon on le met  jour
+        // Si pas dans la base, on l'insre sinon on le met  jour s'il a
+        // t modifi
         if (fluid.getId() == 0)
           fm.insert(fluid);
-        else
+        else if (fluid.isDirty())
           fm.update(fluid);
-        pst.setInt(4, fluid.getId());
+        pst.setLong(4, fluid.getId());
       } else {
         pst.setNull(4, Types.INTEGER);
       }
 
       Building building = entity.getBuilding();
       if (building != null) {
-        // Si pas dans la base, on l'insre sinon on le met  jour
+        // Si pas dans la base, on l'insre sinon on le met  jour s'il a
+        // t modifi
         if (building.getId() == 0)
           bm.insert(building);
-        else
+        else if (building.isDirty())
           bm.update(building);
-        pst.setInt(5, building.getId());
+        pst.setLong(5, building.getId());
       } else {
         pst.setNull(5, Types.INTEGER);
       }
       pst.setDouble(6, entity.getMinThreshold());
       pst.setDouble(7, entity.getMaxThreshold());
 
-      if (entity.getValues() != null) {
-        entity.getValues().forEach(value -> {
-          if (value.getId() == 0) {
-            // La valeur n'est pas dans la base, on l'insre
+      // Pour un SensorProxy, on ne parcourt que les valeurs ajoutes en
+      // mmoire : parcourir getValues lirait tout l'historique depuis la base
+      List<Value> values = entity instanceof SensorProxy ? ((SensorProxy) entity).getUnsavedValues()
+          : entity.getValues();
+      if (values != null) {
+        values.forEach(value -> {
+          if (value.getId() == 0 && value.isDirty()) {
+            // La valeur n'est pas dans la base, on l'insre (les valeurs
+            // des tables compactes n'ont pas d'ID mais sont marques
+            // comme synchronises une fois crites)
             vm.insert(value);
           }
           // Il faudrait normalement mettre  jour la valeur de la base si
@@ -0,0 +1,115 @@
+package managers;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import container.CharSequenceMap;
+import entities.Sensor;
+
+/**
+ * Registre en mmoire des capteurs, indexs par nom et par ID. Il est tenu 
+ * jour par le SensorManager et permet de rsoudre un capteur sans interroger la
+ * base. Cette classe pouvant tre appele de n'importe quel thread, on utilise
+ * des ConcurrentHashMap, et une CharSequenceMap pour les noms : un capteur peut
+ * ainsi tre trouv  partir d'une vue sur le message reu, sans crer de
+ * chane. Les lectures se font sans verrou, les modifications sont srialises.
+ */
+public class SensorRegistry {
+
+  /**
+   * Capteurs indexs par nom.
+   */
+  private final CharSequenceMap<Sensor> byName = new CharSequenceMap<>();
+
+  /**
+   * Verrou srialisant les modifications du registre.
+   */
+  private final Lock lock = new ReentrantLock();
+
+  /**
+   * Capteurs indexs par ID.
+   */
+  private final Map<Long, Sensor> byId = new ConcurrentHashMap<>();
+
+  /**
+   * Nom sous lequel chaque capteur (par ID) est actuellement index, pour
+   * pouvoir retirer l'ancienne entre lors d'un renommage.
+   */
+  private final Map<Long, String> names = new ConcurrentHashMap<>();
+
+  /**
+   * Rcupre un capteur  partir de son nom.
+   *
+   * @param name le nom du capteur (ventuellement une vue sur un tampon)
+   * @return le capteur ou null s'il est inconnu
+   */
+  public Sensor getByName(CharSequence name) {
+    return byName.get(name);
+  }
+
+  /**
+   * Rcupre un capteur  partir de son ID.
+   *
+   * @param id l'ID du capteur
+   * @return le capteur ou null s'il est inconnu
+   */
+  public Sensor getById(long id) {
+    return byId.get(id);
+  }
+
+  /**
+   * Renvoie l'ensemble des capteurs enregistrs.
+   *
+   * @return les capteurs
+   */
+  public Collection<Sensor> getAll() {
+    return byId.values();
+  }
+
+  /**
+   * Ajoute ou met  jour un capteur prsent dans la base.
+   *
+   * @param sensor le capteur (son ID doit tre non nul)
+   */
+  void put(Sensor sensor) {
+    if (sensor == null || sensor.getId() == 0) return;
+
+    lock.lock();
+    try {
+      String name = sensor.getName();
+      byId.put(sensor.getId(), sensor);
+      String oldName = name == null ? names.remove(sensor.getId()) : names.put(sensor.getId(), name);
+      if (oldName != null && !oldName.equals(name)) {
+        // Le capteur a t renomm
+        byName.remove(oldName);
+      }
+      if (name != null) {
+        byName.put(name, sensor);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Retire un capteur du registre.
+   *
+   * @param id l'ID du capteur
+   */
+  void remove(long id) {
+    lock.lock();
+    try {
+      byId.remove(id);
+      String name = names.remove(id);
+      if (name != null) {
+        byName.remove(name);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+}
@@ -0,0 +1,271 @@
+package managers;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import entities.Value;
+
+/**
+ * Regroupe les valeurs  insrer pour les crire par lots dans la base. Un lot
+ * est crit ds qu'il atteint sa taille maximale ou, au plus tard, aprs un
+ * dlai donn.
+ *
+ * Les valeurs d'un lot dont l'criture a chou sont rcrites plus tard, un
+ * nombre limit de fois et avec un dlai croissant. Au-del, ou si trop de
+ * valeurs attendent dj d'tre rcrites, elles sont abandonnes : leur nombre
+ * est affich priodiquement.
+ */
+public class ValueBatchWriter {
+
+  /**
+   * Nombre maximal d'critures d'un lot.
+   */
+  private static final int MAX_ATTEMPTS = 5;
+
+  /**
+   * Dlai (en ms) avant la premire rcriture d'un lot, doubl  chaque
+   * nouvelle tentative.
+   */
+  private static final long RETRY_DELAY = 500;
+
+  /**
+   * Nombre maximal de lots en attente de rcriture.
+   */
+  private static final int MAX_RETRYING_BATCHES = 10;
+
+  /**
+   * Dlai (en s) entre deux affichages des valeurs abandonnes.
+   */
+  private static final long REPORT_PERIOD = 60;
+
+  /**
+   * Nombre maximal de valeurs par requte (MySQL limite le nombre de paramtres
+   * d'une requte prpare  65535).
+   */
+  private static final int MAX_BATCH_SIZE = 10000;
+
+  /**
+   * Le ValueManager.
+   */
+  private final ValueManager vm;
+
+  /**
+   * Taille maximale d'un lot.
+   */
+  private final int batchSize;
+
+  /**
+   * Valeurs en attente d'insertion.
+   */
+  private List<Value> pending;
+
+  /**
+   * Verrou protgeant la liste des valeurs en attente.
+   */
+  private final Lock lock = new ReentrantLock();
+
+  /**
+   * Thread crivant priodiquement le lot en cours et rcrivant les lots en
+   * chec.
+   */
+  private final ScheduledExecutorService scheduler;
+
+  /**
+   * Nombre de valeurs en attente de rcriture.
+   */
+  private final AtomicInteger nbRetrying = new AtomicInteger();
+
+  /**
+   * Nombre de valeurs abandonnes.
+   */
+  private final AtomicLong nbDropped = new AtomicLong();
+
+  /**
+   * Nombre de valeurs abandonnes lors du dernier affichage.
+   */
+  private long nbDroppedReported = 0;
+
+  /**
+   * Constructeur.
+   *
+   * @param vm        le ValueManager
+   * @param batchSize la taille maximale d'un lot
+   * @param delay     le dlai maximal (en ms) avant l'criture d'une valeur
+   */
+  public ValueBatchWriter(ValueManager vm, int batchSize, long delay) {
+    this.vm = vm;
+    this.batchSize = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+    this.pending = new ArrayList<>(this.batchSize);
+
+    scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "value-batch-writer");
+      t.setDaemon(true);
+      return t;
+    });
+    long period = Math.max(1, delay);
+    scheduler.scheduleWithFixedDelay(this::flush, period, period, TimeUnit.MILLISECONDS);
+    scheduler.scheduleWithFixedDelay(this::report, REPORT_PERIOD, REPORT_PERIOD, TimeUnit.SECONDS);
+
+    // On n'oublie pas les valeurs en attente  la fermeture de l'application
+    Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+  }
+
+  /**
+   * Ajoute une valeur au lot en cours. Si le lot est plein, il est crit
+   * immdiatement par le thread appelant.
+   *
+   * @param value la valeur  insrer
+   */
+  public void add(Value value) {
+    List<Value> full = null;
+
+    lock.lock();
+    try {
+      pending.add(value);
+      if (pending.size() >= batchSize) {
+        full = swap();
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    if (full != null) write(full, 1);
+  }
+
+  /**
+   * crit immdiatement les valeurs en attente.
+   */
+  public void flush() {
+    List<Value> batch;
+
+    lock.lock();
+    try {
+      batch = pending.isEmpty() ? null : swap();
+    } finally {
+      lock.unlock();
+    }
+
+    if (batch != null) write(batch, 1);
+  }
+
+  /**
+   * Renvoie le nombre de valeurs abandonnes depuis le dmarrage.
+   *
+   * @return le nombre de valeurs abandonnes
+   */
+  public long getDroppedCount() {
+    return nbDropped.get();
+  }
+
+  /**
+   * Remplace le lot en cours par un lot vide, le verrou tant dtenu.
+   *
+   * @return le lot retir
+   */
+  private List<Value> swap() {
+    List<Value> batch = pending;
+    pending = new ArrayList<>(batchSize);
+    return batch;
+  }
+
+  /**
+   * crit un lot dans la base et programme la rcriture des valeurs non
+   * crites en cas d'erreur.
+   *
+   * @param batch   le lot  crire
+   * @param attempt le numro de la tentative ( partir de 1)
+   */
+  private void write(List<Value> batch, int attempt) {
+    try {
+      vm.insertAll(batch);
+    } catch (SQLException e) {
+      e.printStackTrace();
+      retry(batch, attempt);
+    } catch (RuntimeException e) {
+      // Le thread priodique ne doit pas s'arrter sur une erreur
+      e.printStackTrace();
+      drop(unwritten(batch));
+    }
+  }
+
+  /**
+   * Programme la rcriture des valeurs non crites d'un lot, ou les abandonne
+   * si le lot a puis ses tentatives ou si trop de valeurs attendent dj.
+   *
+   * @param batch   le lot en chec
+   * @param attempt le numro de la tentative qui a chou
+   */
+  private void retry(List<Value> batch, int attempt) {
+    List<Value> remaining = unwritten(batch);
+    if (remaining.isEmpty()) return;
+
+    if (attempt >= MAX_ATTEMPTS) {
+      drop(remaining);
+      return;
+    }
+    int n = remaining.size();
+    if (nbRetrying.addAndGet(n) > MAX_RETRYING_BATCHES * batchSize) {
+      nbRetrying.addAndGet(-n);
+      drop(remaining);
+      return;
+    }
+
+    try {
+      scheduler.schedule(() -> {
+        nbRetrying.addAndGet(-n);
+        write(remaining, attempt + 1);
+      }, RETRY_DELAY << (attempt - 1), TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      nbRetrying.addAndGet(-n);
+      drop(remaining);
+    }
+  }
+
+  /**
+   * Renvoie les valeurs d'un lot qui n'ont pas t crites.
+   *
+   * @param batch le lot
+   * @return les valeurs encore modifies
+   */
+  private static List<Value> unwritten(List<Value> batch) {
+    List<Value> remaining = new ArrayList<>();
+    for (Value value : batch) {
+      if (value.isDirty()) remaining.add(value);
+    }
+
+    return remaining;
+  }
+
+  /**
+   * Abandonne des valeurs.
+   *
+   * @param values les valeurs abandonnes
+   */
+  private void drop(List<Value> values) {
+    nbDropped.addAndGet(values.size());
+  }
+
+  /**
+   * Affiche le nombre de valeurs abandonnes depuis le dernier affichage, s'il y
+   * en a.
+   */
+  private void report() {
+    long dropped = getDroppedCount();
+    if (dropped > nbDroppedReported) {
+      System.err.println((dropped - nbDroppedReported) + " valeur(s) abandonne(s) en " + REPORT_PERIOD
+          + " s (criture impossible, " + nbRetrying.get() + " en attente de rcriture, " + dropped
+          + " abandonnes au total)");
+      nbDroppedReported = dropped;
+    }
+  }
+
+}
@@ -1,44 +1,770 @@
 package managers;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
+import config.Config;
 import database.Query;
+import entities.Fluid;
+import entities.Rollup;
 import entities.Sensor;
 import entities.Value;
 import proxies.ValueProxy;
 
 /**
  * Gre l'ajout/suppression/modification de valeurs dans la base.
+ *
+ * Les valeurs sont stockes dans la table value ou dans une table au format
+ * compact (voir CompactValueManager), selon le fluide de leur capteur
+ * (Config.VALUE_LAYOUTS). Le choix est transparent pour l'appelant : les
+ * mthodes prenant une valeur ou un capteur s'adressent  la bonne table.
+ * Changer le format d'un fluide ne dplace pas les valeurs existantes.
+ *
+ * Les valeurs insres alimentent aussi les tables d'agrgats par minute,
+ * heure et jour (voir RollupManager), utilises pour les longues priodes. Les
+ * valeurs et leurs agrgats sont crits dans une mme transaction.
+ *
+ * La table value peut tre partitionne par date (voir PartitionMaintainer) :
+ * les requtes portant sur une priode doivent alors comparer directement la
+ * colonne date_time  des bornes, sans l'envelopper dans une fonction, afin que
+ * MySQL puisse carter les partitions hors de la priode.
  */
 public class ValueManager extends Manager<Value> {
 
+  /**
+   * SQLState d'une transaction annule par InnoDB pour sortir d'un
+   * interblocage.
+   */
+  private static final String DEADLOCK = "40001";
+
+  /**
+   * Nombre maximal d'excutions d'une transaction annule par un interblocage.
+   */
+  private static final int MAX_ATTEMPTS = 5;
+
+  /**
+   * Dlai (en ms) avant de rejouer une transaction, multipli par le numro de
+   * la tentative.
+   */
+  private static final long RETRY_DELAY = 20;
+
+  /**
+   * Formats de stockage des valeurs.
+   */
+  public static enum Layout {
+    /**
+     * Table value : ID, date  la seconde, valeur en DOUBLE.
+     */
+    STANDARD,
+
+    /**
+     * Table value_compact : cl (capteur, date en ms), valeur en DOUBLE.
+     */
+    COMPACT,
+
+    /**
+     * Table value_compact_float : cl (capteur, date en ms), valeur en FLOAT
+     * (environ 7 chiffres significatifs).
+     */
+    COMPACT_FLOAT;
+  }
+
+  /**
+   * Gestionnaire de la table compacte en DOUBLE.
+   */
+  private final CompactValueManager compact = new CompactValueManager("value_compact", false);
+
+  /**
+   * Gestionnaire de la table compacte en FLOAT.
+   */
+  private final CompactValueManager compactFloat = new CompactValueManager("value_compact_float", true);
+
+  /**
+   * Gestionnaires des tables d'agrgats, par rsolution.
+   */
+  private final Map<RollupManager.Resolution, RollupManager> rollups = new EnumMap<>(
+      RollupManager.Resolution.class);
+
   /**
    * Constructeur.
    */
   public ValueManager() {
     super("value", new String[] { "value", "date_time", "sensor_id" });
+
+    for (RollupManager.Resolution resolution : RollupManager.Resolution.values()) {
+      rollups.put(resolution, new RollupManager(resolution));
+    }
+  }
+
+  /**
+   * Renvoie le gestionnaire des agrgats d'une rsolution.
+   *
+   * @param resolution la rsolution
+   * @return le gestionnaire des agrgats
+   */
+  public RollupManager getRollupManager(RollupManager.Resolution resolution) {
+    return rollups.get(resolution);
+  }
+
+  /**
+   * Renvoie le format de stockage des valeurs d'un capteur.
+   *
+   * @param sensor le capteur
+   * @return le format de stockage de ses valeurs
+   */
+  public Layout getLayout(Sensor sensor) {
+    Fluid fluid = sensor == null ? null : sensor.getFluid();
+    if (fluid == null || fluid.getType() == null) return Layout.STANDARD;
+
+    Layout layout = Config.VALUE_LAYOUTS.get(fluid.getType());
+    return layout == null ? Layout.STANDARD : layout;
+  }
+
+  /**
+   * Renvoie le format de stockage des valeurs d'un capteur  partir de son ID.
+   *
+   * @param sensorId l'ID du capteur
+   * @return le format de stockage de ses valeurs
+   */
+  private Layout getLayout(long sensorId) {
+    return getLayout(mc.get(SensorManager.class).find(sensorId));
+  }
+
+  /**
+   * Renvoie le gestionnaire de table compacte d'un format.
+   *
+   * @param layout le format (COMPACT ou COMPACT_FLOAT)
+   * @return le gestionnaire de la table correspondante
+   */
+  private CompactValueManager getCompactManager(Layout layout) {
+    return layout == Layout.COMPACT_FLOAT ? compactFloat : compact;
+  }
+
+  /**
+   * Insre plusieurs valeurs en un seul aller-retour avec la base par table
+   * concerne, via des requtes INSERT multi-lignes, et les ajoute aux agrgats.
+   * Le tout est fait dans une seule transaction (voir transaction) : en cas
+   * d'erreur, aucune valeur du lot n'est crite et toutes restent modifies
+   * (isDirty). Les capteurs qui ne sont pas encore dans la base sont d'abord
+   * insrs, hors de la transaction.
+   *
+   * @param values les valeurs  insrer
+   * @throws SQLException si les valeurs n'ont pas pu tre crites
+   */
+  public void insertAll(List<Value> values) throws SQLException {
+    List<Value> batch = new ArrayList<>(values.size());
+    List<Value> compactBatch = new ArrayList<>();
+    List<Value> compactFloatBatch = new ArrayList<>();
+    List<Value> all = new ArrayList<>(values.size());
+    for (Value value : values) {
+      Sensor sensor = value.getSensor();
+      if (sensor == null) {
+        insert(value);
+        continue;
+      }
+      if (persistSensor(sensor) == 0) continue;
+
+      switch (getLayout(sensor)) {
+        case COMPACT: compactBatch.add(value); break;
+        case COMPACT_FLOAT: compactFloatBatch.add(value); break;
+        default: batch.add(value);
+      }
+      all.add(value);
+    }
+    if (all.isEmpty()) return;
+
+    transaction(all, () -> {
+      compact.insertAll(compactBatch);
+      compactFloat.insertAll(compactFloatBatch);
+      insertAllStandard(batch);
+      updateRollups(all);
+    });
+  }
+
+  /**
+   * Excute l'criture de valeurs et de leurs agrgats dans une transaction.
+   * Les managers utiliss pendant l'criture empruntent la mme connexion (voir
+   * Manager.getConnection) et participent donc  la transaction. Si elle
+   * choue, les valeurs sont remises dans leur tat d'avant l'criture ; une
+   * transaction annule par un interblocage est rejoue.
+   *
+   * @param values les valeurs crites
+   * @param write  l'criture
+   * @throws SQLException si la transaction n'a pas pu tre valide
+   */
+  private void transaction(List<Value> values, ValueWrite write) throws SQLException {
+    for (int attempt = 1;; ++attempt) {
+      try (Connection conn = getConnection()) {
+        conn.setAutoCommit(false);
+        try {
+          write.run();
+          conn.commit();
+          return;
+        } catch (SQLException e) {
+          rollback(conn, values);
+          if (!DEADLOCK.equals(e.getSQLState()) || attempt >= MAX_ATTEMPTS) throw e;
+        } catch (RuntimeException e) {
+          rollback(conn, values);
+          throw e;
+        } finally {
+          conn.setAutoCommit(true);
+        }
+      }
+
+      try {
+        Thread.sleep(RETRY_DELAY * attempt);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("criture de " + values.size() + " valeurs interrompue", e);
+      }
+    }
+  }
+
+  /**
+   * Annule une transaction d'criture de valeurs : les valeurs n'ont plus d'ID
+   * et sont de nouveau  crire.
+   *
+   * @param conn   la connexion de la transaction
+   * @param values les valeurs crites par la transaction
+   */
+  private static void rollback(Connection conn, List<Value> values) {
+    try {
+      conn.rollback();
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+
+    for (Value value : values) {
+      value.setId(0);
+      value.markDirty();
+    }
+  }
+
+  /**
+   * Insre plusieurs valeurs dans la table value en une seule requte. Les
+   * capteurs des valeurs doivent dj tre dans la base.
+   *
+   * @param batch les valeurs  insrer
+   * @throws SQLException si les valeurs n'ont pas pu tre crites
+   */
+  private void insertAllStandard(List<Value> batch) throws SQLException {
+    if (batch.isEmpty()) return;
+
+    String q = getInsertQuery(batch.size());
+
+    try (Connection conn = getConnection();
+        PreparedStatement pst = conn.prepareStatement(q, Statement.RETURN_GENERATED_KEYS)) {
+      int i = 1;
+      for (Value value : batch) {
+        pst.setDouble(i++, value.getValue());
+        pst.setTimestamp(i++, value.getDateTime());
+        pst.setLong(i++, value.getSensor().getId());
+      }
+      pst.executeUpdate();
+
+      // MySQL renvoie les IDs gnrs dans l'ordre des lignes insres
+      try (ResultSet keys = pst.getGeneratedKeys()) {
+        for (Value value : batch) {
+          if (!keys.next()) break;
+          value.setId(keys.getLong(1));
+          value.markClean();
+        }
+      }
+    }
+  }
+
+  /**
+   * Insre la valeur dans la table correspondant  son capteur et l'ajoute aux
+   * agrgats, dans une mme transaction (voir insertAll).
+   * {@inheritDoc}
+   */
+  @Override
+  public void insert(Value entity) {
+    if (entity == null) return;
+
+    // Le capteur est insr hors de la transaction, une annulation ne devant
+    // pas lui retirer son ID
+    if (entity.getSensor() != null) persistSensor(entity.getSensor());
+
+    Layout layout = getLayout(entity.getSensor());
+    List<Value> values = Collections.singletonList(entity);
+    try {
+      transaction(values, () -> {
+        if (layout == Layout.STANDARD) {
+          super.insert(entity);
+        } else {
+          getCompactManager(layout).insert(entity);
+        }
+
+        if (!entity.isDirty()) updateRollups(values);
+      });
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Ajoute des valeurs crites dans la base aux agrgats de chaque rsolution.
+   *
+   * @param values les valeurs crites
+   * @throws SQLException si les agrgats n'ont pas pu tre crits
+   */
+  private void updateRollups(List<Value> values) throws SQLException {
+    if (!Config.ROLLUPS_ENABLED || values.isEmpty()) return;
+
+    for (RollupManager rm : rollups.values()) {
+      rm.addAll(values);
+    }
+  }
+
+  /**
+   * Recalcule les agrgats de tous les capteurs  partir des valeurs dj
+   * enregistres, de la rsolution la plus fine  la plus grossire. Aucune
+   * valeur ne doit tre insre pendant le calcul.
+   */
+  public void backfillRollups() {
+    for (Sensor sensor : mc.get(SensorManager.class).getRegistry().getAll()) {
+      for (RollupManager rm : rollups.values()) {
+        rm.backfill(sensor.getId());
+      }
+    }
+  }
+
+  /**
+   * Met  jour la valeur dans la table correspondant  son capteur.
+   * {@inheritDoc}
+   */
+  @Override
+  public void update(Value entity) {
+    if (entity == null) return;
+
+    Layout layout = getLayout(entity.getSensor());
+    if (layout == Layout.STANDARD) {
+      super.update(entity);
+    } else {
+      getCompactManager(layout).update(entity);
+    }
+  }
+
+  /**
+   * Supprime la valeur de la table correspondant  son capteur.
+   * {@inheritDoc}
+   */
+  @Override
+  public void delete(Value entity) {
+    if (entity == null) return;
+
+    Layout layout = getLayout(entity.getSensor());
+    if (layout == Layout.STANDARD) {
+      super.delete(entity);
+    } else {
+      getCompactManager(layout).delete(entity);
+    }
+  }
+
+  /**
+   * Supprime les plus anciennes valeurs brutes d'un capteur antrieures  une
+   * date, dans la limite d'un nombre de lignes par table de valeurs (toutes les
+   * tables sont concernes, le format d'un fluide ayant pu changer). Les
+   * suppressions suivent l'ordre de la cl primaire et restent courtes : elles
+   * ne bloquent pas les insertions. Les agrgats ne sont pas modifis.
+   *
+   * @param sensorId l'ID du capteur
+   * @param t        la date limite (exclue), ou null pour toutes les valeurs
+   * @param limit    le nombre maximal de valeurs supprimes par table
+   * @return le nombre de valeurs supprimes
+   */
+  public int deleteBefore(long sensorId, Timestamp t, int limit) {
+    long time = t == null ? Long.MAX_VALUE : t.getTime();
+    int nbDeleted = compact.deleteBefore(sensorId, time, limit) + compactFloat.deleteBefore(sensorId, time, limit);
+
+    String q = "DELETE FROM " + getTable() + " WHERE sensor_id = ?"
+        + (t == null ? "" : " AND date_time < ?") + " ORDER BY date_time LIMIT ?";
+
+    try (Connection conn = getConnection(); PreparedStatement pst = conn.prepareStatement(q)) {
+      int i = 1;
+      pst.setLong(i++, sensorId);
+      if (t != null) pst.setTimestamp(i++, t);
+      pst.setInt(i++, limit);
+      nbDeleted += pst.executeUpdate();
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+
+    return nbDeleted;
+  }
+
+  /**
+   * Rcupre les valeurs d'un capteur, tries par date.
+   *
+   * @param sensorId l'ID du capteur
+   * @return les valeurs du capteur
+   */
+  public List<Value> findAllBySensor(long sensorId) {
+    Layout layout = getLayout(sensorId);
+    if (layout != Layout.STANDARD) {
+      return getCompactManager(layout).findAllBySensor(sensorId);
+    }
+
+    Query query = baseQuery()
+      .where(getTable() + ".sensor_id = ?").params(sensorId)
+      .orderBy(getTable() + ".date_time", Query.Order.ASC);
+
+    return fetchAll(query);
+  }
+
+  /**
+   * Compte les valeurs d'un capteur.
+   *
+   * @param sensorId l'ID du capteur
+   * @return le nombre de valeurs du capteur
+   */
+  public long countBySensor(long sensorId) {
+    Layout layout = getLayout(sensorId);
+    if (layout != Layout.STANDARD) {
+      return getCompactManager(layout).countBySensor(sensorId);
+    }
+
+    return count(new Query().select("COUNT(*)").from(getTable())
+      .where(getTable() + ".sensor_id = ?").params(sensorId));
+  }
+
+  /**
+   * Rcupre une page des valeurs d'un capteur, tries par date puis par ID. Si
+   * la date et l'ID de la dernire valeur de la page prcdente sont donns, la
+   * page commence juste aprs elle (parcours de la cl primaire  partir de
+   * cette position, quel que soit le rang de la page) ; sinon elle commence au
+   * rang offset, ce qui oblige MySQL  lire les lignes prcdentes.
+   *
+   * @param sensorId  l'ID du capteur
+   * @param afterTime la date de la dernire valeur de la page prcdente, ou
+   *                  null
+   * @param afterId   l'ID de la dernire valeur de la page prcdente (si
+   *                  afterTime est donne)
+   * @param offset    le rang de la premire valeur (si afterTime est null)
+   * @param limit     le nombre maximal de valeurs
+   * @return les valeurs de la page
+   */
+  public List<Value> findPageBySensor(long sensorId, Timestamp afterTime, long afterId, int offset, int limit) {
+    Layout layout = getLayout(sensorId);
+    if (layout != Layout.STANDARD) {
+      return getCompactManager(layout).findPageBySensor(sensorId, afterTime, offset, limit);
+    }
+
+    Query query = baseQuery().where(getTable() + ".sensor_id = ?").params(sensorId);
+    if (afterTime != null) {
+      query.where(getTable() + ".date_time > ? OR (" + getTable() + ".date_time = ? AND " + getTable() + ".id > ?)")
+        .params(afterTime, afterTime, afterId);
+    } else {
+      query.offset(offset);
+    }
+
+    return fetchAll(query
+      .orderBy(getTable() + ".date_time", Query.Order.ASC)
+      .orderBy(getTable() + ".id", Query.Order.ASC)
+      .limit(limit));
   }
 
   /**
    * Rcupre la liste des valeurs d'un certain capteur comprises entre t1 et t2
-   * inclus.
+   * inclus, tries par date. La cl primaire de la table commenant par
+   * (sensor_id, date_time), la requte se rsume  un parcours d'intervalle
+   * de cette cl. date_time est compare telle quelle (sans fonction) pour que
+   * MySQL ne lise que les partitions concernes si la table est partitionne.
    *
    * @param sensorId l'ID du capteur dont on veut les valeurs
    * @param t1       la date de dbut
    * @param t2       la date de fin
    * @return la liste des valeurs du capteur comprises entre t1 et t2
    */
-  public List<Value> findAllBySensorBetween(int sensorId, Timestamp t1, Timestamp t2) {
-    Query query = baseQuery()
-      .where(getTable() + ".date_time >= ?", getTable() + ".date_time <= ?").params(t1, t2)
-      .where(getTable() + ".sensor_id = ?").params(sensorId);
+  public List<Value> findAllBySensorBetween(long sensorId, Timestamp t1, Timestamp t2) {
+    Layout layout = getLayout(sensorId);
+    if (layout != Layout.STANDARD) {
+      return getCompactManager(layout).findAllBySensorBetween(sensorId, t1, t2);
+    }
 
-    return fetchAll(query);
+    return fetchAll(betweenQuery(baseQuery(), sensorId, t1, t2));
+  }
+
+  /**
+   * Rcupre sous forme de colonnes (dates en ms et valeurs dans des tableaux
+   * de types primitifs) les valeurs d'un capteur comprises entre t1 et t2
+   * inclus, tries par date. Aucune entit n'est cre.
+   *
+   * @param sensorId l'ID du capteur
+   * @param t1       la date de dbut
+   * @param t2       la date de fin
+   * @return la srie des valeurs
+   */
+  public ValueSeries findSeriesBySensorBetween(long sensorId, Timestamp t1, Timestamp t2) {
+    Layout layout = getLayout(sensorId);
+    if (layout != Layout.STANDARD) {
+      return getCompactManager(layout).findSeriesBySensorBetween(sensorId, t1, t2);
+    }
+
+    Query query = new Query().select(getTable() + ".date_time", getTable() + ".value").from(getTable());
+    ValueSeries series = new ValueSeries();
+    forEachRow(betweenQuery(query, sensorId, t1, t2),
+        rs -> series.add(rs.getTimestamp(1).getTime(), rs.getDouble(2)));
+
+    return series;
+  }
+
+  /**
+   * Rcupre sous forme de colonnes les valeurs d'un capteur comprises entre t1
+   * et t2 pour un affichage sur nbPoints points environ : les longues priodes
+   * sont lues dans les agrgats (minimum et maximum de chaque intervalle).
+   *
+   * @param sensorId l'ID du capteur
+   * @param t1       la date de dbut
+   * @param t2       la date de fin
+   * @param nbPoints le nombre de points voulus
+   * @return la srie des valeurs
+   */
+  public ValueSeries findSeriesBySensorBetween(long sensorId, Timestamp t1, Timestamp t2, int nbPoints) {
+    return findSeriesBySensorBetween(sensorId, t1, t2, getResolutionFor(t2.getTime() - t1.getTime(), nbPoints));
+  }
+
+  /**
+   * Rcupre sous forme de colonnes les valeurs d'un capteur comprises entre t1
+   * et t2,  une rsolution donne.
+   *
+   * @param sensorId   l'ID du capteur
+   * @param t1         la date de dbut
+   * @param t2         la date de fin
+   * @param resolution la rsolution des agrgats  lire (minimum et maximum de
+   *                   chaque intervalle, voir RollupManager.Resolution
+   *                   .addEnvelope), ou null pour les valeurs brutes
+   * @return la srie des valeurs
+   */
+  public ValueSeries findSeriesBySensorBetween(long sensorId, Timestamp t1, Timestamp t2,
+      RollupManager.Resolution resolution) {
+    if (resolution == null) {
+      return findSeriesBySensorBetween(sensorId, t1, t2);
+    }
+
+    RollupManager rm = rollups.get(resolution);
+    long firstBucket = rm.getFirstBucket(sensorId);
+    ValueSeries series = new ValueSeries();
+    if (t1.getTime() < firstBucket) {
+      // Priode antrieure aux agrgats (base mise  jour sans recalcul) : les
+      // valeurs brutes sont agrges dans la base sur les mmes intervalles
+      Timestamp end = new Timestamp(Math.min(t2.getTime(), firstBucket - 1));
+      Layout layout = getLayout(sensorId);
+      String column = valueColumn(layout);
+      Query query = aggregateQuery(layout, Collections.singletonList(sensorId), t1, end,
+          (int) (resolution.getDuration() / 1000))
+        .select(Query.Aggregate.MIN, column)
+        .select(Query.Aggregate.MAX, column);
+      forEachRow(query, rs -> resolution.addEnvelope(series, rs.getLong(2), rs.getDouble(3), rs.getDouble(4)));
+    }
+    if (t2.getTime() >= firstBucket) {
+      Timestamp start = new Timestamp(Math.max(t1.getTime(), firstBucket));
+      return series.merge(rm.findSeriesBySensorBetween(sensorId, start, t2));
+    }
+
+    return series;
+  }
+
+  /**
+   * Renvoie la rsolution  laquelle lire une priode pour un affichage sur
+   * nbPoints points environ (voir RollupManager.Resolution.coarsestFor).
+   *
+   * @param range    la dure de la priode (en ms)
+   * @param nbPoints le nombre de points voulus
+   * @return la rsolution des agrgats  lire, ou null pour les valeurs brutes
+   *         (priode courte ou agrgats dsactivs)
+   */
+  public RollupManager.Resolution getResolutionFor(long range, int nbPoints) {
+    return Config.ROLLUPS_ENABLED ? RollupManager.Resolution.coarsestFor(range, nbPoints) : null;
+  }
+
+  /**
+   * Agrge dans la base les valeurs d'un capteur comprises entre t1 et t2
+   * inclus par intervalles de bucketSeconds secondes : seul un point par
+   * intervalle non vide est renvoy,  la date de dbut de l'intervalle.
+   *
+   * @param sensorId      l'ID du capteur
+   * @param t1            la date de dbut
+   * @param t2            la date de fin
+   * @param bucketSeconds la dure des intervalles (en s)
+   * @param aggregate     la fonction d'agrgation
+   * @return la srie des valeurs agrges, trie par date
+   */
+  public ValueSeries aggregateSeriesBySensor(long sensorId, Timestamp t1, Timestamp t2, int bucketSeconds,
+      Query.Aggregate aggregate) {
+    Layout layout = getLayout(sensorId);
+    Query query = aggregateQuery(layout, Collections.singletonList(sensorId), t1, t2, bucketSeconds)
+      .select(aggregate, valueColumn(layout));
+
+    ValueSeries series = new ValueSeries();
+    forEachRow(query, rs -> series.add(rs.getLong(2), rs.getDouble(3)));
+
+    return series;
+  }
+
+  /**
+   * Agrge dans la base les valeurs de plusieurs capteurs comprises entre t1 et
+   * t2 inclus par intervalles de bucketSeconds secondes. Chaque agrgat donne le
+   * minimum, le maximum, la somme et le nombre de valeurs (donc la moyenne) de
+   * l'intervalle ; la dernire valeur n'est pas calcule. Une requte est
+   * effectue par format de stockage des capteurs.
+   *
+   * @param sensorIds     les IDs des capteurs
+   * @param t1            la date de dbut
+   * @param t2            la date de fin
+   * @param bucketSeconds la dure des intervalles (en s)
+   * @return les agrgats des intervalles non vides, tris par capteur puis par
+   *         date
+   */
+  public List<Rollup> aggregateBySensors(Collection<Long> sensorIds, Timestamp t1, Timestamp t2,
+      int bucketSeconds) {
+    Map<Long, Sensor> sensors = mc.get(SensorManager.class).findAllById(sensorIds);
+    Map<Layout, List<Long>> byLayout = new EnumMap<>(Layout.class);
+    for (Sensor sensor : sensors.values()) {
+      byLayout.computeIfAbsent(getLayout(sensor), k -> new ArrayList<>()).add(sensor.getId());
+    }
+
+    List<Rollup> aggregates = new ArrayList<>();
+    for (Map.Entry<Layout, List<Long>> entry : byLayout.entrySet()) {
+      String column = valueColumn(entry.getKey());
+      Query query = aggregateQuery(entry.getKey(), entry.getValue(), t1, t2, bucketSeconds)
+        .select(Query.Aggregate.MIN, column)
+        .select(Query.Aggregate.MAX, column)
+        .select(Query.Aggregate.SUM, column)
+        .select(Query.Aggregate.COUNT, column);
+
+      forEachRow(query, rs -> {
+        Rollup rollup = new Rollup(sensors.get(rs.getLong(1)), new Timestamp(rs.getLong(2)));
+        rollup.setMin(rs.getDouble(3));
+        rollup.setMax(rs.getDouble(4));
+        rollup.setSum(rs.getDouble(5));
+        rollup.setCount(rs.getLong(6));
+        // Agrgat calcul : il ne doit pas tre crit dans la base
+        rollup.markClean();
+        aggregates.add(rollup);
+      });
+    }
+
+    return aggregates;
+  }
+
+  /**
+   * Cre la requte d'agrgation des valeurs de capteurs d'un mme format par
+   * intervalles de temps. Elle slectionne l'ID du capteur et le dbut de
+   * l'intervalle (en ms), les fonctions d'agrgation restant  ajouter. La date
+   * n'est tronque que dans la cl de regroupement : le filtre sur l'intervalle
+   * porte sur la colonne brute, pour parcourir la cl primaire et, sur la table
+   * value, ne lire que les partitions concernes.
+   *
+   * @param layout        le format de stockage des capteurs
+   * @param sensorIds     les IDs des capteurs
+   * @param t1            la date de dbut
+   * @param t2            la date de fin
+   * @param bucketSeconds la dure des intervalles (en s)
+   * @return la requte
+   */
+  private Query aggregateQuery(Layout layout, Collection<Long> sensorIds, Timestamp t1, Timestamp t2,
+      int bucketSeconds) {
+    String table = layout == Layout.STANDARD ? getTable() : getCompactManager(layout).getTable();
+    long bucketMs = Math.max(1, bucketSeconds) * 1000L;
+    String time = layout == Layout.STANDARD ? "UNIX_TIMESTAMP(" + table + ".date_time) * 1000" : table + ".ts";
+
+    Query query = new Query()
+      .select(table + ".sensor_id", "FLOOR(" + time + " / " + bucketMs + ") * " + bucketMs + " AS bucket")
+      .from(table)
+      .where(table + ".sensor_id IN (" + String.join(", ", Collections.nCopies(sensorIds.size(), "?")) + ")")
+      .params(sensorIds.toArray());
+    if (layout == Layout.STANDARD) {
+      query.where(table + ".date_time BETWEEN ? AND ?").params(t1, t2);
+    } else {
+      query.where(table + ".ts BETWEEN ? AND ?").params(t1.getTime(), t2.getTime());
+    }
+
+    return query
+      .groupBy(table + ".sensor_id", "bucket")
+      .orderBy(table + ".sensor_id", Query.Order.ASC)
+      .orderBy("bucket", Query.Order.ASC);
+  }
+
+  /**
+   * Renvoie la colonne des valeurs de la table d'un format de stockage.
+   *
+   * @param layout le format de stockage
+   * @return le nom qualifi de la colonne
+   */
+  private String valueColumn(Layout layout) {
+    return (layout == Layout.STANDARD ? getTable() : getCompactManager(layout).getTable()) + ".value";
+  }
+
+  /**
+   * Parcourt en flux les valeurs d'un capteur comprises entre t1 et t2 inclus,
+   * tries par date, sans les charger toutes en mmoire (voir Manager.stream).
+   *
+   * @param sensorId l'ID du capteur
+   * @param t1       la date de dbut
+   * @param t2       la date de fin
+   * @return le flux des valeurs,  fermer aprs utilisation
+   */
+  public Stream<Value> streamBySensorBetween(long sensorId, Timestamp t1, Timestamp t2) {
+    Layout layout = getLayout(sensorId);
+    if (layout != Layout.STANDARD) {
+      return getCompactManager(layout).streamBySensorBetween(sensorId, t1, t2);
+    }
+
+    return stream(betweenQuery(baseQuery(), sensorId, t1, t2));
+  }
+
+  /**
+   * Complte une requte sur la table value pour rcuprer les valeurs d'un
+   * capteur comprises entre t1 et t2 inclus, tries par date.
+   *
+   * @param query    la requte  complter
+   * @param sensorId l'ID du capteur
+   * @param t1       la date de dbut
+   * @param t2       la date de fin
+   * @return la requte
+   */
+  private Query betweenQuery(Query query, long sensorId, Timestamp t1, Timestamp t2) {
+    return query
+      .where(getTable() + ".sensor_id = ?").params(sensorId)
+      .where(getTable() + ".date_time BETWEEN ? AND ?").params(t1, t2)
+      .orderBy(getTable() + ".date_time", Query.Order.ASC);
+  }
+
+  /**
+   * Ne slectionne que les colonnes utiles  l'hydratation plutt que SELECT *.
+   *
+   * @return la requte de base
+   */
+  @Override
+  protected Query createBaseQuery() {
+    return super.createBaseQuery()
+      .select(getTable() + ".id", getTable() + ".value", getTable() + ".date_time", getTable() + ".sensor_id");
+  }
+
+  /**
+   * Les valeurs rcupres chargent leurs capteurs ensemble (voir
+   * ValueProxy.batch). {@inheritDoc}
+   */
+  @Override
+  protected List<Value> fetchAll(Query query) {
+    List<Value> values = super.fetchAll(query);
+    ValueProxy.batch(values);
+
+    return values;
   }
 
   /**
@@ -49,10 +775,10 @@ public class ValueManager extends Manager<Value> {
     ValueProxy value = null;
 
     try {
-      int id = rs.getInt(getTable() + ".id");
+      long id = rs.getLong(getTable() + ".id");
       double val = rs.getDouble(getTable() + ".value");
       Timestamp dateTime = rs.getTimestamp(getTable() + ".date_time");
-      int sensorId = rs.getInt(getTable() + ".sensor_id");
+      long sensorId = rs.getLong(getTable() + ".sensor_id");
 
       // Le capteur sera rcupr lors de l'appel  getSensor (on aurait
       // aussi pu faire une jointure pour l'hydrater directement)
@@ -60,6 +786,7 @@ public class ValueManager extends Manager<Value> {
       value.setId(id);
       value.setValue(val);
       value.setDateTime(dateTime);
+      value.markClean();
     } catch (SQLException e) {
       e.printStackTrace();
     }
@@ -72,25 +799,11 @@ public class ValueManager extends Manager<Value> {
    */
   @Override
   protected void dehydrate(PreparedStatement pst, Value entity) {
-    SensorManager sm = mc.get(SensorManager.class);
-
     try {
       pst.setDouble(1, entity.getValue());
       pst.setTimestamp(2, entity.getDateTime());
-      Sensor sensor = entity.getSensor();
-      if (sensor != null) {
-        if (sensor.getId() == 0) {
-          // Le capteur n'est pas dans la base, on l'ajoute.
-          // Peut entraner un blocage si la valeur n'tait pas
-          // dj dans la base, car le capteur va aussi ajouter cette
-          // valeur et ainsi de suite. Cela n'arrive pas en pratique
-          // car quand on insre une valeur, le capteur est dj
-          // dans la base.
-          sm.insert(sensor);
-        } else {
-          sm.update(sensor);
-        }
-        pst.setInt(3, sensor.getId());
+      if (entity.getSensor() != null) {
+        pst.setLong(3, persistSensor(entity.getSensor()));
       } else {
         pst.setNull(3, Types.INTEGER);
       }
@@ -99,4 +812,45 @@ public class ValueManager extends Manager<Value> {
     }
   }
 
+  /**
+   * S'assure que le capteur d'une valeur est  jour dans la base avant
+   * d'crire la valeur.
+   *
+   * @param sensor le capteur de la valeur
+   * @return l'ID du capteur
+   */
+  long persistSensor(Sensor sensor) {
+    SensorManager sm = mc.get(SensorManager.class);
+
+    if (sensor.getId() == 0) {
+      // Le capteur n'est pas dans la base, on l'ajoute.
+      // Peut entraner un blocage si la valeur n'tait pas
+      // dj dans la base, car le capteur va aussi ajouter cette
+      // valeur et ainsi de suite. Cela n'arrive pas en pratique
+      // car quand on insre une valeur, le capteur est dj
+      // dans la base.
+      sm.insert(sensor);
+    } else if (sensor.isDirty()) {
+      // Capteur modifi depuis sa lecture : on le met  jour
+      sm.update(sensor);
+    }
+
+    return sensor.getId();
+  }
+
+  /**
+   * criture de valeurs excute dans une transaction (voir transaction).
+   */
+  @FunctionalInterface
+  private static interface ValueWrite {
+
+    /**
+     * crit les valeurs.
+     *
+     * @throws SQLException
+     */
+    void run() throws SQLException;
+
+  }
+
 }
@@ -0,0 +1,145 @@
+package managers;
+
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import entities.Fluid;
+import entities.Sensor;
+
+/**
+ * Supprime priodiquement les valeurs brutes ayant dpass la dure de
+ * conservation de leur type de fluide, ainsi que les valeurs des capteurs
+ * supprims. Les suppressions sont faites par petits lots, dans l'ordre de la
+ * cl primaire et entrecoupes de pauses, pour ne jamais bloquer longtemps les
+ * insertions. Elles sont toutes effectues par le mme thread.
+ */
+public class ValuePurger {
+
+  /**
+   * Pause (en ms) entre deux lots de suppression.
+   */
+  private static final long CHUNK_PAUSE = 50;
+
+  /**
+   * Le ValueManager.
+   */
+  private final ValueManager vm;
+
+  /**
+   * Le SensorManager.
+   */
+  private final SensorManager sm;
+
+  /**
+   * Dure de conservation (en jours) des valeurs de chaque type de fluide.
+   */
+  private final Map<Fluid.Type, Integer> retentionDays;
+
+  /**
+   * Nombre maximal de valeurs supprimes par requte.
+   */
+  private final int chunkSize;
+
+  /**
+   * Thread effectuant les purges.
+   */
+  private final ScheduledExecutorService scheduler;
+
+  /**
+   * Constructeur. Dmarre les purges priodiques si des dures de conservation
+   * sont dfinies.
+   *
+   * @param vm            le ValueManager
+   * @param sm            le SensorManager
+   * @param retentionDays la dure de conservation (en jours) des valeurs de
+   *                      chaque type de fluide (les types absents ne sont pas
+   *                      purgs)
+   * @param chunkSize     le nombre maximal de valeurs supprimes par requte
+   * @param period        le dlai (en ms) entre deux purges
+   */
+  public ValuePurger(ValueManager vm, SensorManager sm, Map<Fluid.Type, Integer> retentionDays, int chunkSize,
+      long period) {
+    this.vm = vm;
+    this.sm = sm;
+    this.retentionDays = retentionDays;
+    this.chunkSize = Math.max(1, chunkSize);
+
+    scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "value-purger");
+      t.setDaemon(true);
+      return t;
+    });
+    if (!retentionDays.isEmpty()) {
+      long delay = Math.max(1000, period);
+      scheduler.scheduleWithFixedDelay(this::purge, 0, delay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Supprime en arrire-plan toutes les valeurs brutes d'un capteur, puis
+   * excute une action (en gnral la suppression du capteur, qui ne supprime
+   * alors plus les valeurs en une seule transaction par la cascade).
+   *
+   * @param sensorId l'ID du capteur
+   * @param then     l'action excute une fois les valeurs supprimes
+   */
+  public void deleteAllBySensor(long sensorId, Runnable then) {
+    scheduler.execute(() -> {
+      try {
+        purge(sensorId, null);
+        then.run();
+      } catch (InterruptedException e) {
+        // Arrt demand
+        Thread.currentThread().interrupt();
+      } catch (RuntimeException e) {
+        e.printStackTrace();
+      }
+    });
+  }
+
+  /**
+   * Arrte les purges priodiques.
+   */
+  public void stop() {
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * Supprime les valeurs expires de tous les capteurs.
+   */
+  public void purge() {
+    try {
+      long now = System.currentTimeMillis();
+      for (Sensor sensor : sm.getRegistry().getAll()) {
+        Fluid fluid = sensor.getFluid();
+        Integer days = fluid == null ? null : retentionDays.get(fluid.getType());
+        if (days == null) continue;
+
+        purge(sensor.getId(), new Timestamp(now - TimeUnit.DAYS.toMillis(days)));
+      }
+    } catch (InterruptedException e) {
+      // Arrt demand
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      // Le thread priodique ne doit pas s'arrter sur une erreur
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Supprime par lots les valeurs d'un capteur antrieures  une date.
+   *
+   * @param sensorId l'ID du capteur
+   * @param cutoff   la date limite, ou null pour toutes les valeurs
+   * @throws InterruptedException si le thread est interrompu
+   */
+  private void purge(long sensorId, Timestamp cutoff) throws InterruptedException {
+    while (vm.deleteBefore(sensorId, cutoff, chunkSize) > 0) {
+      Thread.sleep(CHUNK_PAUSE);
+    }
+  }
+
+}
@@ -0,0 +1,245 @@
+package managers;
+
+import java.util.Arrays;
+
+/**
+ * Srie temporelle de valeurs stocke en colonnes : deux tableaux de types
+ * primitifs (dates en ms et valeurs) qui grandissent au fil des ajouts. Une
+ * valeur n'occupe ainsi que 16 octets, contre une centaine pour un ValueProxy et
+ * son Timestamp.
+ */
+public class ValueSeries {
+
+  /**
+   * Capacit initiale des tableaux.
+   */
+  private static final int INITIAL_CAPACITY = 256;
+
+  /**
+   * Dates des valeurs (en ms depuis l'epoch).
+   */
+  private long[] times;
+
+  /**
+   * Valeurs.
+   */
+  private double[] values;
+
+  /**
+   * Nombre de valeurs de la srie.
+   */
+  private int size = 0;
+
+  /**
+   * Constructeur.
+   */
+  public ValueSeries() {
+    this(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Constructeur.
+   *
+   * @param capacity le nombre de valeurs attendues
+   */
+  public ValueSeries(int capacity) {
+    times = new long[Math.max(1, capacity)];
+    values = new double[times.length];
+  }
+
+  /**
+   * Ajoute une valeur en fin de srie.
+   *
+   * @param time  la date de la valeur (en ms)
+   * @param value la valeur
+   */
+  public void add(long time, double value) {
+    if (size == times.length) {
+      int capacity = times.length + (times.length >> 1) + 1;
+      times = Arrays.copyOf(times, capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+
+    times[size] = time;
+    values[size] = value;
+    size++;
+  }
+
+  /**
+   * Renvoie le nombre de valeurs de la srie.
+   *
+   * @return le nombre de valeurs
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Renvoie la date d'une valeur.
+   *
+   * @param index l'indice de la valeur
+   * @return la date (en ms)
+   */
+  public long getTime(int index) {
+    if (index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    return times[index];
+  }
+
+  /**
+   * Renvoie une valeur.
+   *
+   * @param index l'indice de la valeur
+   * @return la valeur
+   */
+  public double getValue(int index) {
+    if (index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    return values[index];
+  }
+
+  /**
+   * Renvoie une copie des dates,  la taille exacte de la srie.
+   *
+   * @return les dates (en ms)
+   */
+  public long[] getTimes() {
+    return Arrays.copyOf(times, size);
+  }
+
+  /**
+   * Renvoie une copie des valeurs,  la taille exacte de la srie.
+   *
+   * @return les valeurs
+   */
+  public double[] getValues() {
+    return Arrays.copyOf(values, size);
+  }
+
+  /**
+   * Renvoie l'indice de la premire valeur date de time ou aprs (size() si
+   * aucune). La srie doit tre trie par date.
+   *
+   * @param time la date (en ms)
+   * @return l'indice de la valeur
+   */
+  public int indexOf(long time) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (times[mid] < time) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    return low;
+  }
+
+  /**
+   * Renvoie les valeurs dates entre start et end inclus. La srie doit tre
+   * trie par date.
+   *
+   * @param start la date de dbut (en ms)
+   * @param end   la date de fin (en ms)
+   * @return une nouvelle srie contenant ces valeurs
+   */
+  public ValueSeries slice(long start, long end) {
+    int from = indexOf(start);
+    int to = end == Long.MAX_VALUE ? size : indexOf(end + 1);
+
+    ValueSeries slice = new ValueSeries(to - from);
+    if (to > from) {
+      System.arraycopy(times, from, slice.times, 0, to - from);
+      System.arraycopy(values, from, slice.values, 0, to - from);
+      slice.size = to - from;
+    }
+
+    return slice;
+  }
+
+  /**
+   * Fusionne deux sries tries par date.  date gale, les valeurs de this
+   * sont places en premier.
+   *
+   * @param other l'autre srie
+   * @return une nouvelle srie trie contenant les valeurs des deux sries
+   */
+  public ValueSeries merge(ValueSeries other) {
+    ValueSeries merged = new ValueSeries(size + other.size);
+    int i = 0;
+    int j = 0;
+    while (i < size || j < other.size) {
+      if (j >= other.size || (i < size && times[i] <= other.times[j])) {
+        merged.add(times[i], values[i]);
+        i++;
+      } else {
+        merged.add(other.times[j], other.values[j]);
+        j++;
+      }
+    }
+
+    return merged;
+  }
+
+  /**
+   * Rduit la srie  nbPoints points par l'algorithme Largest-Triangle-Three-
+   * Buckets : les valeurs (hors premire et dernire) sont rparties en
+   * nbPoints - 2 intervalles et, dans chacun, on garde le point formant le plus
+   * grand triangle avec le point gard prcdemment et la moyenne de
+   * l'intervalle suivant. Les pics et creux restent ainsi visibles, ce qui
+   * n'est pas le cas d'une simple moyenne. La srie doit tre trie par date.
+   *
+   * @param nbPoints le nombre de points voulus
+   * @return la srie rduite, ou this si elle contient dj au plus nbPoints
+   *         points
+   */
+  public ValueSeries downsample(int nbPoints) {
+    if (nbPoints < 3 || size <= nbPoints) return this;
+
+    ValueSeries sampled = new ValueSeries(nbPoints);
+    // Les dates sont prises relativement  la premire pour garder la
+    // prcision des calculs en double
+    long t0 = times[0];
+    double every = (double) (size - 2) / (nbPoints - 2);
+
+    int a = 0;
+    sampled.add(times[0], values[0]);
+    for (int i = 0; i < nbPoints - 2; ++i) {
+      // Moyenne de l'intervalle suivant (le dernier point pour le dernier
+      // intervalle)
+      int avgStart = (int) ((i + 1) * every) + 1;
+      int avgEnd = Math.min((int) ((i + 2) * every) + 1, size);
+      double avgX = 0;
+      double avgY = 0;
+      for (int j = avgStart; j < avgEnd; ++j) {
+        avgX += times[j] - t0;
+        avgY += values[j];
+      }
+      avgX /= avgEnd - avgStart;
+      avgY /= avgEnd - avgStart;
+
+      // Point de l'intervalle courant formant le plus grand triangle
+      int rangeStart = (int) (i * every) + 1;
+      int rangeEnd = (int) ((i + 1) * every) + 1;
+      double ax = times[a] - t0;
+      double ay = values[a];
+      double maxArea = -1;
+      int next = rangeStart;
+      for (int j = rangeStart; j < rangeEnd; ++j) {
+        double area = Math.abs((ax - avgX) * (values[j] - ay) - (ax - (times[j] - t0)) * (avgY - ay));
+        if (area > maxArea) {
+          maxArea = area;
+          next = j;
+        }
+      }
+
+      sampled.add(times[next], values[next]);
+      a = next;
+    }
+    sampled.add(times[size - 1], values[size - 1]);
+
+    return sampled;
+  }
+
+}
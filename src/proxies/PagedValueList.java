@@ -0,0 +1,210 @@
+package proxies;
+
+import java.sql.Timestamp;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import entities.Value;
+import managers.ValueManager;
+
+/**
+ * Historique d'un capteur charg page par page  la demande. Seules les
+ * dernires pages consultes sont gardes en mmoire : parcourir l'historique
+ * complet d'un capteur n'en charge jamais qu'un nombre born de valeurs  la
+ * fois.
+ *
+ * Une page est rcupre  partir de la dernire valeur de la page prcdente
+ * (voir ValueManager.findPageBySensor) ds que celle-ci est connue, ce qui est
+ * le cas lors d'un parcours dans l'ordre ; un accs direct  une page lointaine
+ * passe par son rang. Seules la date et l'ID de ces valeurs sont conservs,
+ * dans des tableaux de types primitifs, pour toutes les pages dj lues.
+ *
+ * La liste reflte les valeurs prsentes dans la base lors de son premier
+ * accs. Les valeurs qui lui sont ajoutes restent en mmoire,  la fin de la
+ * liste, jusqu' ce que le capteur soit enregistr.
+ */
+public class PagedValueList extends AbstractList<Value> {
+
+  /**
+   * Le ValueManager.
+   */
+  private final ValueManager vm;
+
+  /**
+   * L'ID du capteur.
+   */
+  private final long sensorId;
+
+  /**
+   * Nombre de valeurs par page.
+   */
+  private final int pageSize;
+
+  /**
+   * Pages en mmoire par numro, de la moins rcemment consulte  la plus
+   * rcemment consulte.
+   */
+  private final Map<Integer, List<Value>> pages;
+
+  /**
+   * Date (en ms) de la dernire valeur de chaque page dj charge, par numro
+   * de page (Long.MIN_VALUE si inconnue).
+   */
+  private long[] pageEndTimes = new long[0];
+
+  /**
+   * ID de la dernire valeur de chaque page dj charge, par numro de page.
+   */
+  private long[] pageEndIds = new long[0];
+
+  /**
+   * Valeurs ajoutes  la liste et pas encore enregistres.
+   */
+  private final List<Value> added = new ArrayList<>();
+
+  /**
+   * Nombre de valeurs du capteur dans la base (-1 tant qu'il n'a pas t
+   * compt).
+   */
+  private int persistedSize = -1;
+
+  /**
+   * Constructeur.
+   *
+   * @param vm       le ValueManager
+   * @param sensorId l'ID du capteur
+   * @param pageSize le nombre de valeurs par page
+   * @param maxPages le nombre maximal de pages gardes en mmoire
+   */
+  public PagedValueList(ValueManager vm, long sensorId, int pageSize, final int maxPages) {
+    this.vm = vm;
+    this.sensorId = sensorId;
+    this.pageSize = Math.max(1, pageSize);
+    this.pages = new LinkedHashMap<Integer, List<Value>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, List<Value>> eldest) {
+        return size() > Math.max(1, maxPages);
+      }
+    };
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized Value get(int index) {
+    int persisted = getPersistedSize();
+    if (index >= persisted && index - persisted < added.size()) {
+      return added.get(index - persisted);
+    }
+    if (index < 0 || index >= persisted) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+    }
+
+    List<Value> page = getPage(index / pageSize);
+    int i = index % pageSize;
+    if (i >= page.size()) {
+      // Valeurs supprimes de la base depuis le comptage
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+    }
+
+    return page.get(i);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized int size() {
+    return getPersistedSize() + added.size();
+  }
+
+  /**
+   * Ajoute une valeur  la fin de la liste, sans l'enregistrer.
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized boolean add(Value value) {
+    added.add(value);
+    modCount++;
+
+    return true;
+  }
+
+  /**
+   * Renvoie les valeurs ajoutes  la liste depuis sa cration (les seules qui
+   * peuvent ne pas tre dans la base).
+   *
+   * @return les valeurs ajoutes
+   */
+  public synchronized List<Value> getAdded() {
+    return new ArrayList<>(added);
+  }
+
+  /**
+   * Renvoie le nombre de valeurs du capteur dans la base, en les comptant au
+   * premier appel.
+   *
+   * @return le nombre de valeurs
+   */
+  private int getPersistedSize() {
+    if (persistedSize < 0) {
+      persistedSize = (int) Math.min(Integer.MAX_VALUE, vm.countBySensor(sensorId));
+    }
+
+    return persistedSize;
+  }
+
+  /**
+   * Renvoie une page, en la chargeant si elle n'est pas en mmoire.
+   *
+   * @param n le numro de la page
+   * @return les valeurs de la page
+   */
+  private List<Value> getPage(int n) {
+    List<Value> page = pages.get(n);
+    if (page != null) return page;
+
+    if (n == 0) {
+      page = vm.findPageBySensor(sensorId, null, 0, 0, pageSize);
+    } else if (n - 1 < pageEndTimes.length && pageEndTimes[n - 1] != Long.MIN_VALUE) {
+      page = vm.findPageBySensor(sensorId, new Timestamp(pageEndTimes[n - 1]), pageEndIds[n - 1], 0, pageSize);
+    } else {
+      page = vm.findPageBySensor(sensorId, null, 0, n * pageSize, pageSize);
+    }
+    page = Collections.unmodifiableList(page);
+
+    pages.put(n, page);
+    if (!page.isEmpty()) setPageEnd(n, page.get(page.size() - 1));
+
+    return page;
+  }
+
+  /**
+   * Mmorise la date et l'ID de la dernire valeur d'une page.
+   *
+   * @param n     le numro de la page
+   * @param value la dernire valeur de la page
+   */
+  private void setPageEnd(int n, Value value) {
+    if (value.getDateTime() == null) return;
+
+    if (n >= pageEndTimes.length) {
+      int length = Math.max(n + 1, pageEndTimes.length * 2);
+      int oldLength = pageEndTimes.length;
+      pageEndTimes = Arrays.copyOf(pageEndTimes, length);
+      Arrays.fill(pageEndTimes, oldLength, length, Long.MIN_VALUE);
+      pageEndIds = Arrays.copyOf(pageEndIds, length);
+    }
+    pageEndTimes[n] = value.getDateTime().getTime();
+    pageEndIds[n] = value.getId();
+  }
+
+}
@@ -0,0 +1,88 @@
+package proxies;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import entities.Sensor;
+import managers.SensorManager;
+
+/**
+ * Charge en une fois les capteurs d'un ensemble de ValueProxy issus d'une mme
+ * requte : au premier appel de getSensor sur l'une des valeurs, les capteurs de
+ * toutes les valeurs du lot sont rcuprs ensemble (depuis le registre, puis
+ * par une seule requte WHERE id IN (...) pour ceux qui n'y sont pas). Parcourir
+ * les valeurs en accdant  leur capteur cote ainsi un nombre de requtes
+ * constant.
+ */
+public class SensorBatchLoader {
+
+  /**
+   * Le SensorManager.
+   */
+  private final SensorManager sm;
+
+  /**
+   * IDs des capteurs du lot qui n'ont pas encore t chargs.
+   */
+  private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Capteurs dj chargs, par ID.
+   */
+  private final Map<Long, Sensor> sensors = new ConcurrentHashMap<>();
+
+  /**
+   * Verrou srialisant les chargements.
+   */
+  private final Lock loadLock = new ReentrantLock();
+
+  /**
+   * Constructeur.
+   *
+   * @param sm le SensorManager
+   */
+  public SensorBatchLoader(SensorManager sm) {
+    this.sm = sm;
+  }
+
+  /**
+   * Ajoute un capteur au lot  charger.
+   *
+   * @param sensorId l'ID du capteur
+   */
+  public void register(long sensorId) {
+    if (!sensors.containsKey(sensorId)) pending.add(sensorId);
+  }
+
+  /**
+   * Renvoie un capteur du lot, en chargeant au besoin tous les capteurs du lot
+   * qui ne l'ont pas encore t.
+   *
+   * @param sensorId l'ID du capteur
+   * @return le capteur ou null s'il n'existe pas
+   */
+  public Sensor get(long sensorId) {
+    Sensor sensor = sensors.get(sensorId);
+    if (sensor != null) return sensor;
+
+    loadLock.lock();
+    try {
+      register(sensorId);
+      if (!pending.isEmpty()) {
+        List<Long> ids = new ArrayList<>(pending);
+        sensors.putAll(sm.findAllById(ids));
+        pending.removeAll(ids);
+      }
+    } finally {
+      loadLock.unlock();
+    }
+
+    return sensors.get(sensorId);
+  }
+
+}
@@ -1,7 +1,9 @@
 package proxies;
 
+import java.util.Collections;
 import java.util.List;
 
+import config.Config;
 import container.ManagerContainer;
 import entities.Fluid;
 import entities.Sensor;
@@ -25,7 +27,7 @@ public class SensorProxy extends Sensor {
    * @param id    l'ID du capteur
    * @param fluid le fluide du capteur
    */
-  public SensorProxy(int id, Fluid fluid) {
+  public SensorProxy(long id, Fluid fluid) {
     super(fluid);
     setId(id);
     ManagerContainer mc = ManagerContainer.getInstance();
@@ -33,18 +35,35 @@ public class SensorProxy extends Sensor {
   }
 
   /**
-   * Renvoie les valeurs du capteur et va les chercher depuis la base s'il ne les
-   * a pas dj.
+   * Renvoie les valeurs du capteur. Elles ne sont pas charges en une fois : la
+   * liste renvoye va les chercher dans la base page par page, au fur et 
+   * mesure des accs (voir PagedValueList).
    *
    * @return la liste des valeurs du capteur
    */
   @Override
   public List<Value> getValues() {
     if (super.getValues() == null) {
-      setValues(vm.findAllBy("sensor_id", getId()));
+      setValues(new PagedValueList(vm, getId(), Config.VALUE_PAGE_SIZE, Config.VALUE_PAGE_CACHE));
     }
 
     return super.getValues();
   }
 
+  /**
+   * Renvoie les valeurs du capteur qui peuvent ne pas tre dans la base : celles
+   * ajoutes  la liste des valeurs, sans parcourir les valeurs dj
+   * enregistres.
+   *
+   * @return les valeurs ventuellement non enregistres
+   */
+  public List<Value> getUnsavedValues() {
+    List<Value> values = super.getValues();
+    if (values == null) return Collections.emptyList();
+    if (values instanceof PagedValueList) return ((PagedValueList) values).getAdded();
+
+    // Liste affecte par setValues
+    return values;
+  }
+
 }
@@ -1,5 +1,7 @@
 package proxies;
 
+import java.util.Collection;
+
 import container.ManagerContainer;
 import entities.Sensor;
 import entities.Value;
@@ -19,14 +21,20 @@ public class ValueProxy extends Value {
   /**
    * L'ID du capteur associ.
    */
-  private int sensorId;
+  private long sensorId;
+
+  /**
+   * Chargeur partag par les valeurs d'une mme requte (null si la valeur
+   * rcupre son capteur seule).
+   */
+  private SensorBatchLoader loader;
 
   /**
    * Constructeur.
    *
    * @param sensorId l'ID du capteur associ
    */
-  public ValueProxy(int sensorId) {
+  public ValueProxy(long sensorId) {
     ManagerContainer mc = ManagerContainer.getInstance();
     sm = mc.get(SensorManager.class);
     this.sensorId = sensorId;
@@ -40,10 +48,33 @@ public class ValueProxy extends Value {
   @Override
   public Sensor getSensor() {
     if (super.getSensor() == null) {
-      setSensor(sm.find(sensorId));
+      // Le chargement paresseux ne modifie pas la valeur
+      boolean dirty = isDirty();
+      setSensor(loader != null ? loader.get(sensorId) : sm.find(sensorId));
+      if (!dirty) markClean();
     }
 
     return super.getSensor();
   }
 
+  /**
+   * Fait partager un mme chargeur de capteurs aux ValueProxy d'une liste de
+   * valeurs (issues d'une mme requte) : le premier appel  getSensor charge
+   * les capteurs de toutes ces valeurs  la fois.
+   *
+   * @param values les valeurs
+   */
+  public static void batch(Collection<? extends Value> values) {
+    SensorBatchLoader loader = null;
+
+    for (Value value : values) {
+      if (value instanceof ValueProxy) {
+        ValueProxy proxy = (ValueProxy) value;
+        if (loader == null) loader = new SensorBatchLoader(proxy.sm);
+        proxy.loader = loader;
+        loader.register(proxy.sensorId);
+      }
+    }
+  }
+
 }
@@ -1,9 +1,10 @@
 package server;
 
 import java.sql.Timestamp;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
-import javax.swing.SwingUtilities;
-
+import config.Config;
 import container.ManagerContainer;
 import entities.Building;
 import entities.Fluid;
@@ -13,19 +14,21 @@ import entities.Value;
 import managers.BuildingManager;
 import managers.FluidManager;
 import managers.SensorManager;
+import managers.ValueBatchWriter;
 import managers.ValueManager;
 import table.SensorTableModel;
+import table.SensorTableUpdater;
 
 /**
  * Rceptionne les message du serveur et excute l'action voulue (ajout dans la
  * base, notification du tableau temps rel, etc.).
  */
-public class DBWriter implements IWriter {
+public class DBWriter implements IWriter, IProtocolHandler {
 
   /**
-   * Le modle du tableau temps rel.
+   * Applique les modifications au tableau temps rel  frquence fixe.
    */
-  private SensorTableModel tableModel;
+  private SensorTableUpdater tableUpdater;
 
   /**
    * Le SensorManager.
@@ -47,6 +50,25 @@ public class DBWriter implements IWriter {
    */
   private ValueManager vm;
 
+  /**
+   * Regroupe les valeurs reues pour les insrer par lots.
+   */
+  private ValueBatchWriter valueWriter;
+
+  /**
+   * Verrou srialisant les connexions de capteurs. On utilise un verrou
+   * explicite plutt que synchronized : un thread virtuel bloqu (ici sur un
+   * appel JDBC) dans un bloc synchronized immobilise son thread porteur, alors
+   * qu'il le libre en attendant un ReentrantLock.
+   */
+  private final Lock connectLock = new ReentrantLock();
+
+  /**
+   * Dcodeur des messages. Il rutilise ses tampons d'un message  l'autre, on
+   * en utilise donc un par thread de rception.
+   */
+  private final ThreadLocal<ProtocolDecoder> decoder = ThreadLocal.withInitial(ProtocolDecoder::new);
+
   /**
    * Constructeur.
    *
@@ -54,11 +76,12 @@ public class DBWriter implements IWriter {
    * @param tableModel le modle du tableau temps rel
    */
   public DBWriter(ManagerContainer mc, SensorTableModel tableModel) {
-    this.tableModel = tableModel;
+    this.tableUpdater = new SensorTableUpdater(tableModel, Config.TABLE_FRAME_RATE);
     sm = mc.get(SensorManager.class);
     fm = mc.get(FluidManager.class);
     bm = mc.get(BuildingManager.class);
     vm = mc.get(ValueManager.class);
+    valueWriter = new ValueBatchWriter(vm, Config.VALUE_BATCH_SIZE, Config.VALUE_BATCH_DELAY);
   }
 
   /**
@@ -67,26 +90,49 @@ public class DBWriter implements IWriter {
    * @param message le message du serveur
    */
   public void write(String message) {
-    String[] parts = message.split(" ");
-
-    switch (parts[0].toLowerCase()) {
-    case "connexion":
-      connect(parts[1], parts[2]);
-      break;
-    case "donnee":
-      data(parts[1], Double.valueOf(parts[2]));
-      break;
-    case "deconnexion":
-      if (parts.length >= 2) {
-        disconnect(parts[1]);
-      }
-      break;
+    write((CharSequence) message);
+  }
+
+  /**
+   * Dcode le message du serveur sans copie et effectue l'action
+   * correspondante.
+   *
+   * @param message le message du serveur
+   */
+  @Override
+  public void write(CharSequence message) {
+    if (!decoder.get().decode(message, this)) {
+      System.err.println("Message \"" + message + "\" invalide. Message ignor.");
     }
   }
 
   /**
-   * Gre la connexion d'un capteur. Tous les threads ayant la mme connexion  la
-   * base, il est ncessaire de synchroniser cette mthode sinon un thread peut
+   * {@inheritDoc}
+   */
+  @Override
+  public void onConnect(CharSequence sensorName, CharSequence description) {
+    connect(sensorName, description);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onData(CharSequence sensorName, double value) {
+    data(sensorName, value);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onDisconnect(CharSequence sensorName) {
+    disconnect(sensorName);
+  }
+
+  /**
+   * Gre la connexion d'un capteur. Plusieurs capteurs pouvant se connecter en
+   * mme temps, il est ncessaire de srialiser cette mthode sinon un thread peut
    * ajouter un nouveau capteur (avec par ex. un nouveau btiment) pendant qu'un
    * autre ne va pas trouver le btiment (il est en train d'tre ajout) et va
    * donc considrer qu'il faut l'ajouter.
@@ -94,24 +140,41 @@ public class DBWriter implements IWriter {
    * @param sensorName  le nom du capteur qui vient de se connecter
    * @param description la chane dcrivant le capteur
    */
-  private synchronized void connect(String sensorName, String description) {
-    String[] parts = description.split(":");
+  private void connect(CharSequence sensorName, CharSequence description) {
+    connectLock.lock();
+    try {
+      doConnect(sensorName, description);
+    } finally {
+      connectLock.unlock();
+    }
+  }
+
+  /**
+   * Effectue la connexion d'un capteur, le verrou tant dtenu. Le nom n'est
+   * copi que pour un nouveau capteur ; la description, elle, est dcoupe en
+   * chanes (les connexions tant rares).
+   *
+   * @param sensorName  le nom du capteur qui vient de se connecter
+   * @param description la chane dcrivant le capteur
+   */
+  private void doConnect(CharSequence sensorName, CharSequence description) {
+    String[] parts = description.toString().split(":");
     String fluidType = parts[0];
     String buildingName = parts[1];
     String floor = parts[2];
     String place = parts[3];
 
-    Sensor sensor = sm.findBy("name", sensorName);
+    Sensor sensor = sm.findByName(sensorName);
     boolean exists = sensor != null;
 
-    // Rcupration du fluide depuis la base et cration si inexistant
-    Fluid fluid = fm.findBy("type", fluidType);
+    // Rcupration du fluide depuis le cache et cration si inexistant
+    Fluid fluid = fm.findByType(Type.valueOf(fluidType));
     if (fluid == null) {
       fluid = new Fluid(Type.valueOf(fluidType));
     }
 
-    // Rcupration du btiment depuis la base et cration si inexistant
-    Building building = bm.findBy("name", buildingName);
+    // Rcupration du btiment depuis le cache et cration si inexistant
+    Building building = bm.findByName(buildingName);
     if (building == null) {
       building = new Building();
       building.setName(buildingName);
@@ -123,21 +186,20 @@ public class DBWriter implements IWriter {
       sensor.setPlace(place);
       sensor.setFluid(fluid);
       sensor.setBuilding(building);
-      sm.update(sensor);
+      // Rien  crire si le capteur n'a pas chang depuis sa dernire connexion
+      if (sensor.isDirty()) sm.update(sensor);
     } else {
       // On cre un nouveau capteur et on l'insre
       sensor = new Sensor(fluid);
-      sensor.setName(sensorName);
+      sensor.setName(sensorName.toString());
       sensor.setFloor(Integer.valueOf(floor));
       sensor.setPlace(place);
       sensor.setBuilding(building);
       sm.insert(sensor);
     }
 
-    // On notifie le tableau temps rel de l'ajout d'un capteur (sensor
-    // n'tant pas final, on passe par une autre variable)
-    Sensor s = sensor;
-    SwingUtilities.invokeLater(() -> tableModel.insert(s));
+    // On notifie le tableau temps rel de l'ajout d'un capteur
+    tableUpdater.insert(sensor);
   }
 
   /**
@@ -146,9 +208,9 @@ public class DBWriter implements IWriter {
    * @param sensorName le nom du capteur qui a mis la donne
    * @param value      la valeur mise
    */
-  private void data(String sensorName, double value) {
-    // Rcupration du capteur
-    Sensor sensor = sm.findBy("name", sensorName);
+  private void data(CharSequence sensorName, double value) {
+    // Rcupration du capteur depuis le registre en mmoire, sans copier le nom
+    Sensor sensor = sm.findByName(sensorName);
     if (sensor == null) {
       System.err.println("Capteur \"" + sensorName + "\" inexistant. Donne ignore.");
       return;
@@ -159,11 +221,12 @@ public class DBWriter implements IWriter {
     v.setValue(value);
     v.setDateTime(new Timestamp(System.currentTimeMillis()));
     v.setSensor(sensor);
-    vm.insert(v);
+    valueWriter.add(v);
     sensor.setLastValue(v);
 
-    // Mise  jour du tableau
-    SwingUtilities.invokeLater(() -> tableModel.update(sensor));
+    // Mise  jour du tableau (regroupe avec les autres au prochain
+    // rafrachissement)
+    tableUpdater.update(sensor);
   }
 
   /**
@@ -171,16 +234,16 @@ public class DBWriter implements IWriter {
    *
    * @param sensorName le capteur qui s'est dconnect
    */
-  private void disconnect(String sensorName) {
-    // On rcupre le capteur
-    Sensor sensor = sm.findBy("name", sensorName);
+  private void disconnect(CharSequence sensorName) {
+    // On rcupre le capteur depuis le registre en mmoire
+    Sensor sensor = sm.findByName(sensorName);
     if (sensor == null) {
       System.err.println("Capteur \"" + sensorName + "\" inexistant.");
       return;
     }
 
     // Suppression du capteur dans le tableau
-    SwingUtilities.invokeLater(() -> tableModel.remove(sensor));
+    tableUpdater.remove(sensor);
   }
 
 }
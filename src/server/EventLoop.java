@@ -0,0 +1,314 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Boucle d'vnements non bloquante grant la lecture d'un ensemble de sockets
+ * de capteurs. Chaque boucle possde son propre Selector et un unique tampon de
+ * lecture rutilis pour toutes ses connexions ; les lignes sont dcoupes  la
+ * main avant d'tre transmises au IWriter.
+ */
+class EventLoop implements Runnable {
+
+  /**
+   * Taille du tampon de lecture partag par les connexions de la boucle.
+   */
+  private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+  /**
+   * Taille maximale d'une ligne. Au-del, la ligne est ignore (protge contre
+   * un capteur qui n'enverrait jamais de fin de ligne).
+   */
+  private static final int MAX_LINE_LENGTH = 8 * 1024;
+
+  /**
+   * Jeu de caractres utilis pour dcoder les messages (le mme que celui de
+   * l'InputStreamReader du mode bloquant).
+   */
+  private static final Charset CHARSET = Charset.defaultCharset();
+
+  /**
+   * Instance de IWriter qui va rcuprer les messages.
+   */
+  private final IWriter writer;
+
+  /**
+   * Selector de la boucle.
+   */
+  private final Selector selector;
+
+  /**
+   * Sockets accepts en attente d'enregistrement auprs du Selector (un canal ne
+   * peut tre enregistr que depuis le thread de la boucle sans risquer de
+   * bloquer sur select).
+   */
+  private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Tampon de lecture rutilis.
+   */
+  private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+  /**
+   * Indique si la boucle doit s'arrter.
+   */
+  private volatile boolean stopped = false;
+
+  /**
+   * Constructeur.
+   *
+   * @param writer l'instance de IWriter
+   * @throws IOException si le Selector ne peut pas tre ouvert
+   */
+  EventLoop(IWriter writer) throws IOException {
+    this.writer = writer;
+    this.selector = Selector.open();
+  }
+
+  /**
+   * Confie un nouveau socket  la boucle. Peut tre appel depuis n'importe quel
+   * thread.
+   *
+   * @param channel le socket (non bloquant) du capteur
+   */
+  void register(SocketChannel channel) {
+    pending.add(channel);
+    selector.wakeup();
+  }
+
+  /**
+   * Demande l'arrt de la boucle.
+   */
+  void shutdown() {
+    stopped = true;
+    selector.wakeup();
+  }
+
+  /**
+   * Boucle principale.
+   */
+  @Override
+  public void run() {
+    try {
+      while (!stopped) {
+        selector.select();
+        registerPending();
+
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+
+          if (key.isValid() && key.isReadable()) {
+            read(key);
+          }
+        }
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    } finally {
+      // Fermeture de toutes les connexions restantes
+      for (SelectionKey key : selector.keys()) {
+        close(key);
+      }
+      try {
+        selector.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Enregistre auprs du Selector les sockets en attente.
+   */
+  private void registerPending() {
+    SocketChannel channel;
+    while ((channel = pending.poll()) != null) {
+      try {
+        channel.register(selector, SelectionKey.OP_READ, new LineBuffer());
+      } catch (IOException e) {
+        e.printStackTrace();
+        try {
+          channel.close();
+        } catch (IOException e1) {
+          e1.printStackTrace();
+        }
+      }
+    }
+  }
+
+  /**
+   * Lit les donnes disponibles sur un socket et transmet chaque ligne complte
+   * au writer.
+   *
+   * @param key la cl du socket prt  tre lu
+   */
+  private void read(SelectionKey key) {
+    SocketChannel channel = (SocketChannel) key.channel();
+    LineBuffer line = (LineBuffer) key.attachment();
+
+    int read;
+    try {
+      readBuffer.clear();
+      read = channel.read(readBuffer);
+    } catch (IOException e) {
+      // Connexion rinitialise par le capteur
+      read = -1;
+    }
+
+    if (read < 0) {
+      // Fin du flux : comme readLine, on transmet la dernire ligne non
+      // termine s'il y en a une
+      if (line.size > 0) line.emit();
+      close(key);
+      return;
+    }
+
+    readBuffer.flip();
+    while (readBuffer.hasRemaining()) {
+      line.accept(readBuffer.get());
+    }
+  }
+
+  /**
+   * Ferme un socket et libre sa cl.
+   *
+   * @param key la cl du socket
+   */
+  private void close(SelectionKey key) {
+    // Cl dj ferme (elle reste dans le Selector jusqu'au prochain select)
+    if (!key.isValid()) return;
+
+    key.cancel();
+    try {
+      key.channel().close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Accumule les octets d'une connexion jusqu' obtenir une ligne complte. Les
+   * fins de ligne reconnues sont les mmes que celles de BufferedReader.readLine
+   * ("\n", "\r" ou "\r\n"). Une ligne entirement ASCII (cas normal du
+   * protocole) est transmise au writer sous forme de vue sur le tampon, sans
+   * crer de chane.
+   */
+  private class LineBuffer implements CharSequence {
+
+    /**
+     * Octets de la ligne en cours.
+     */
+    private byte[] bytes = new byte[128];
+
+    /**
+     * Nombre d'octets de la ligne en cours.
+     */
+    private int size = 0;
+
+    /**
+     * Indique que la ligne en cours ne contient que des caractres ASCII.
+     */
+    private boolean ascii = true;
+
+    /**
+     * Indique que le dernier octet reu tait un '\r' (un '\n' le suivant
+     * immdiatement ne termine pas une nouvelle ligne).
+     */
+    private boolean skipLF = false;
+
+    /**
+     * Indique que la ligne en cours a dpass MAX_LINE_LENGTH et doit tre
+     * ignore.
+     */
+    private boolean overflow = false;
+
+    /**
+     * Traite un octet reu.
+     *
+     * @param b l'octet
+     */
+    private void accept(byte b) {
+      if (b == '\n' && skipLF) {
+        skipLF = false;
+        return;
+      }
+      skipLF = b == '\r';
+
+      if (b == '\n' || b == '\r') {
+        if (overflow) {
+          System.err.println("Ligne de plus de " + MAX_LINE_LENGTH + " octets ignore.");
+          overflow = false;
+          size = 0;
+          ascii = true;
+        } else {
+          emit();
+        }
+      } else if (!overflow) {
+        if (size == MAX_LINE_LENGTH) {
+          overflow = true;
+        } else {
+          if (size == bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.min(bytes.length * 2, MAX_LINE_LENGTH));
+          }
+          bytes[size++] = b;
+          ascii &= b >= 0;
+        }
+      }
+    }
+
+    /**
+     * Transmet la ligne en cours au writer et la rinitialise.
+     */
+    private void emit() {
+      try {
+        if (ascii) {
+          writer.write(this);
+        } else {
+          writer.write(new String(bytes, 0, size, CHARSET));
+        }
+      } catch (RuntimeException e) {
+        // Un message mal form ne doit pas arrter la boucle (et donc
+        // dconnecter tous les autres capteurs)
+        e.printStackTrace();
+      } finally {
+        size = 0;
+        ascii = true;
+      }
+    }
+
+    @Override
+    public int length() {
+      return size;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index < 0 || index >= size) throw new IndexOutOfBoundsException();
+      return (char) bytes[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public String toString() {
+      return new String(bytes, 0, size, StandardCharsets.US_ASCII);
+    }
+
+  }
+
+}
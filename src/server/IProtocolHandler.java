@@ -0,0 +1,36 @@
+package server;
+
+/**
+ * Interface dfinissant les oprations appeles par le ProtocolDecoder pour
+ * chaque message du protocole des capteurs.
+ *
+ * Les CharSequence passes en paramtre sont des vues sur le tampon du message
+ * en cours de dcodage : elles ne sont valides que pendant l'appel et doivent
+ * tre copies (toString) si elles doivent tre conserves.
+ */
+public interface IProtocolHandler {
+
+  /**
+   * Appel lors de la rception d'un message "connexion".
+   *
+   * @param sensorName  le nom du capteur
+   * @param description la description du capteur (type:btiment:tage:lieu)
+   */
+  public void onConnect(CharSequence sensorName, CharSequence description);
+
+  /**
+   * Appel lors de la rception d'un message "donnee".
+   *
+   * @param sensorName le nom du capteur
+   * @param value      la valeur mise
+   */
+  public void onData(CharSequence sensorName, double value);
+
+  /**
+   * Appel lors de la rception d'un message "deconnexion".
+   *
+   * @param sensorName le nom du capteur
+   */
+  public void onDisconnect(CharSequence sensorName);
+
+}
@@ -13,4 +13,16 @@ public interface IWriter {
    */
   public void write(String message);
 
+  /**
+   * Appel lors de la rception d'un message sous forme de vue sur le tampon de
+   * rception. La squence n'est valide que pendant l'appel : une
+   * implmentation qui la conserve doit la copier. Par dfaut, le message est
+   * converti en chane et transmis  write(String).
+   *
+   * @param message le message reu
+   */
+  public default void write(CharSequence message) {
+    write(message.toString());
+  }
+
 }
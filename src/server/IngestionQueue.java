@@ -0,0 +1,582 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import container.CharSequenceMap;
+
+/**
+ * File borne place entre le serveur et un IProtocolHandler. Les threads de
+ * rception ne font que dcoder les messages et les dposer, qui sont ensuite
+ * traits par un ensemble de threads consommateurs ddis : une lenteur de la
+ * base se traduit ainsi par de la latence (ou des pertes, selon la politique
+ * choisie) plutt que par le blocage de toutes les lectures rseau.
+ *
+ * Ce sont les champs dcods (nom du capteur, valeur ou description) qui sont
+ * dposs, dans des cases alloues une fois pour toutes : dposer et traiter un
+ * message ne cre aucun objet.
+ *
+ * La file est partitionne par capteur (une sous-file par consommateur) afin
+ * que les messages d'un mme capteur soient traits dans l'ordre. Les
+ * politiques de dbordement ne s'appliquent qu'aux messages de donnes : les
+ * messages de connexion et de dconnexion ne sont jamais perdus et attendent
+ * qu'une place se libre.
+ *
+ * Le nombre de messages abandonns et la profondeur de la file sont affichs
+ * priodiquement lorsque des messages ont t abandonns.
+ */
+public class IngestionQueue implements IWriter, IProtocolHandler {
+
+  /**
+   * Dlai (en s) entre deux affichages des messages abandonns.
+   */
+  private static final long REPORT_PERIOD = 60;
+
+  /**
+   * Nombre de capteurs suivis par sous-file (SHED_PER_SENSOR) au-del duquel
+   * ceux qui n'ont plus de donnes en attente sont oublis.
+   */
+  private static final int MIN_TRACKED_SENSORS = 1024;
+
+  /**
+   * Types de messages.
+   */
+  private static enum Kind {
+    CONNECT, DATA, DISCONNECT;
+  }
+
+  /**
+   * Politiques appliques lorsque la file est pleine.
+   */
+  public static enum OverflowPolicy {
+    /**
+     * Le thread de rception attend qu'une place se libre (le capteur est
+     * alors ralenti par TCP).
+     */
+    BLOCK,
+
+    /**
+     * La plus ancienne donne en attente est abandonne au profit de la
+     * nouvelle.
+     */
+    DROP_OLDEST,
+
+    /**
+     * La nouvelle donne est abandonne.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Chaque capteur a un nombre limit de donnes en attente ; au-del, ses
+     * nouvelles donnes sont abandonnes (un capteur trop bavard ne pnalise
+     * pas les autres). Si la file est pleine malgr tout, on attend.
+     */
+    SHED_PER_SENSOR;
+  }
+
+  /**
+   * Le handler qui traite effectivement les messages.
+   */
+  private final IProtocolHandler handler;
+
+  /**
+   * Politique de dbordement.
+   */
+  private final OverflowPolicy policy;
+
+  /**
+   * Nombre maximal de donnes en attente par capteur (SHED_PER_SENSOR).
+   */
+  private final int perSensorLimit;
+
+  /**
+   * Sous-files, une par consommateur.
+   */
+  private final List<Partition> partitions;
+
+  /**
+   * Nombre de messages abandonns.
+   */
+  private final AtomicLong nbDropped = new AtomicLong();
+
+  /**
+   * Nombre de messages abandonns lors du dernier affichage.
+   */
+  private long nbDroppedReported = 0;
+
+  /**
+   * Thread affichant les messages abandonns.
+   */
+  private final ScheduledExecutorService reporter;
+
+  /**
+   * Dcodeur des messages (un par thread de rception).
+   */
+  private final ThreadLocal<ProtocolDecoder> decoder = ThreadLocal.withInitial(ProtocolDecoder::new);
+
+  /**
+   * Constructeur. Dmarre les threads consommateurs.
+   *
+   * @param handler        le handler qui traite les messages
+   * @param capacity       le nombre maximal de messages en attente
+   * @param nbConsumers    le nombre de threads consommateurs
+   * @param policy         la politique de dbordement
+   * @param perSensorLimit le nombre maximal de donnes en attente par capteur
+   *                       (SHED_PER_SENSOR uniquement)
+   */
+  public IngestionQueue(IProtocolHandler handler, int capacity, int nbConsumers, OverflowPolicy policy,
+      int perSensorLimit) {
+    this.handler = handler;
+    this.policy = policy;
+    this.perSensorLimit = Math.max(1, perSensorLimit);
+
+    int n = Math.max(1, nbConsumers);
+    int partitionCapacity = Math.max(1, capacity / n);
+    partitions = new ArrayList<>(n);
+    for (int i = 0; i < n; ++i) {
+      Partition partition = new Partition(partitionCapacity);
+      partitions.add(partition);
+      Thread t = new Thread(new Consumer(partition), "ingestion-consumer-" + i);
+      t.setDaemon(true);
+      t.start();
+    }
+
+    reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "ingestion-reporter");
+      t.setDaemon(true);
+      return t;
+    });
+    reporter.scheduleWithFixedDelay(this::report, REPORT_PERIOD, REPORT_PERIOD, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Renvoie le nombre de messages actuellement en attente.
+   *
+   * @return la profondeur de la file
+   */
+  public int getDepth() {
+    int depth = 0;
+    for (Partition partition : partitions) {
+      depth += partition.size();
+    }
+
+    return depth;
+  }
+
+  /**
+   * Renvoie le nombre de messages abandonns depuis le dmarrage.
+   *
+   * @return le nombre de messages abandonns
+   */
+  public long getDroppedCount() {
+    return nbDropped.get();
+  }
+
+  /**
+   * Affiche le nombre de messages abandonns depuis le dernier affichage, s'il y
+   * en a.
+   */
+  private void report() {
+    long dropped = getDroppedCount();
+    if (dropped > nbDroppedReported) {
+      System.err.println((dropped - nbDroppedReported) + " message(s) abandonn(s) en " + REPORT_PERIOD
+          + " s (file pleine, " + getDepth() + " messages en attente, " + dropped + " abandonns au total)");
+      nbDroppedReported = dropped;
+    }
+  }
+
+  /**
+   * Dcode un message et le dpose dans la file.
+   *
+   * @param message le message reu
+   */
+  @Override
+  public void write(String message) {
+    write((CharSequence) message);
+  }
+
+  /**
+   * Dcode un message et le dpose dans la file, sans copier le message.
+   *
+   * @param message le message reu
+   */
+  @Override
+  public void write(CharSequence message) {
+    if (!decoder.get().decode(message, this)) {
+      System.err.println("Message \"" + message + "\" invalide. Message ignor.");
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onConnect(CharSequence sensorName, CharSequence description) {
+    enqueue(Kind.CONNECT, sensorName, 0, description);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onData(CharSequence sensorName, double value) {
+    enqueue(Kind.DATA, sensorName, value, null);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onDisconnect(CharSequence sensorName) {
+    enqueue(Kind.DISCONNECT, sensorName, 0, null);
+  }
+
+  /**
+   * Dpose un message dcod dans la sous-file de son capteur en appliquant la
+   * politique de dbordement. Les champs sont copis dans une case de la
+   * sous-file.
+   *
+   * @param kind        le type du message
+   * @param name        le nom du capteur
+   * @param value       la valeur (donnes uniquement)
+   * @param description la description (connexion uniquement)
+   */
+  private void enqueue(Kind kind, CharSequence name, double value, CharSequence description) {
+    Partition partition = partitions.get(Math.floorMod(hash(name), partitions.size()));
+    boolean data = kind == Kind.DATA;
+
+    partition.lock.lock();
+    try {
+      boolean tracked = false;
+      if (data && policy == OverflowPolicy.SHED_PER_SENSOR) {
+        if (!partition.track(name)) {
+          nbDropped.incrementAndGet();
+          return;
+        }
+        tracked = true;
+      }
+
+      while (partition.size == partition.slots.length) {
+        if (data && policy == OverflowPolicy.DROP_NEWEST) {
+          nbDropped.incrementAndGet();
+          return;
+        }
+        if (data && policy == OverflowPolicy.DROP_OLDEST && partition.removeOldestData()) {
+          nbDropped.incrementAndGet();
+          continue;
+        }
+
+        // Les messages de contrle ne sont jamais perdus : on attend
+        try {
+          partition.notFull.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          if (tracked) partition.untrack(name);
+          nbDropped.incrementAndGet();
+          return;
+        }
+      }
+
+      partition.add(kind, name, value, description, tracked);
+    } finally {
+      partition.lock.unlock();
+    }
+  }
+
+  /**
+   * Calcule un hash du nom du capteur sans crer de chane.
+   *
+   * @param name le nom du capteur
+   * @return le hash
+   */
+  private static int hash(CharSequence name) {
+    int h = 0;
+    for (int i = 0; i < name.length(); ++i) {
+      h = 31 * h + name.charAt(i);
+    }
+
+    return h;
+  }
+
+  /**
+   * Case d'une sous-file contenant un message dcod. Les cases sont rutilises
+   * d'un message  l'autre.
+   */
+  private static class Slot {
+
+    /**
+     * Le type du message.
+     */
+    private Kind kind;
+
+    /**
+     * Le nom du capteur.
+     */
+    private final StringBuilder name = new StringBuilder();
+
+    /**
+     * La valeur (donnes uniquement).
+     */
+    private double value;
+
+    /**
+     * La description (connexion uniquement).
+     */
+    private final StringBuilder description = new StringBuilder();
+
+    /**
+     * Indique si la donne est compte dans les donnes en attente de son
+     * capteur.
+     */
+    private boolean tracked;
+
+  }
+
+  /**
+   * Sous-file : tampon circulaire de cases protg par un verrou.
+   */
+  private class Partition {
+
+    /**
+     * Les cases, les messages en attente occupant size cases  partir de head.
+     */
+    private final Slot[] slots;
+
+    /**
+     * Indice du plus ancien message en attente.
+     */
+    private int head = 0;
+
+    /**
+     * Nombre de messages en attente.
+     */
+    private int size = 0;
+
+    /**
+     * Verrou protgeant la sous-file.
+     */
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * Condition signale lorsqu'un message est dpos.
+     */
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * Condition signale lorsqu'un message est retir.
+     */
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * Nombre de donnes en attente par capteur (SHED_PER_SENSOR). Un capteur
+     * reste suivi aprs le traitement de ses donnes, pour ne pas recopier son
+     * nom  chaque donne ; les capteurs inactifs sont oublis lorsque leur
+     * nombre dpasse trackedLimit.
+     */
+    private final CharSequenceMap<AtomicInteger> pendingBySensor = new CharSequenceMap<>();
+
+    /**
+     * Nombre de capteurs suivis au-del duquel les inactifs sont oublis.
+     */
+    private int trackedLimit = MIN_TRACKED_SENSORS;
+
+    /**
+     * Constructeur.
+     *
+     * @param capacity le nombre maximal de messages en attente
+     */
+    private Partition(int capacity) {
+      slots = new Slot[capacity];
+      for (int i = 0; i < capacity; ++i) {
+        slots[i] = new Slot();
+      }
+    }
+
+    /**
+     * Renvoie le nombre de messages en attente.
+     *
+     * @return le nombre de messages
+     */
+    private int size() {
+      lock.lock();
+      try {
+        return size;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Compte une donne de plus en attente pour un capteur si sa limite n'est
+     * pas atteinte. Le verrou doit tre dtenu.
+     *
+     * @param name le nom du capteur
+     * @return true si la donne est accepte
+     */
+    private boolean track(CharSequence name) {
+      AtomicInteger counter = pendingBySensor.get(name);
+      if (counter == null) {
+        if (pendingBySensor.size() >= trackedLimit) {
+          pendingBySensor.removeIf(c -> c.get() == 0);
+          trackedLimit = Math.max(MIN_TRACKED_SENSORS, pendingBySensor.size() * 2);
+        }
+        counter = new AtomicInteger();
+        pendingBySensor.put(name, counter);
+      }
+      if (counter.get() >= perSensorLimit) return false;
+
+      counter.incrementAndGet();
+      return true;
+    }
+
+    /**
+     * Compte une donne de moins en attente pour un capteur. Le verrou doit tre
+     * dtenu.
+     *
+     * @param name le nom du capteur
+     */
+    private void untrack(CharSequence name) {
+      AtomicInteger counter = pendingBySensor.get(name);
+      if (counter != null) counter.decrementAndGet();
+    }
+
+    /**
+     * Copie un message dans la premire case libre. Le verrou doit tre dtenu
+     * et la sous-file ne doit pas tre pleine.
+     *
+     * @param kind        le type du message
+     * @param name        le nom du capteur
+     * @param value       la valeur
+     * @param description la description ou null
+     * @param tracked     si la donne est compte pour son capteur
+     */
+    private void add(Kind kind, CharSequence name, double value, CharSequence description, boolean tracked) {
+      Slot slot = slots[(head + size) % slots.length];
+      slot.kind = kind;
+      slot.name.setLength(0);
+      slot.name.append(name);
+      slot.value = value;
+      slot.description.setLength(0);
+      if (description != null) slot.description.append(description);
+      slot.tracked = tracked;
+
+      size++;
+      notEmpty.signal();
+    }
+
+    /**
+     * Retire le plus ancien message en attente, en attendant s'il n'y en a pas.
+     * La case du message est change avec une case vide fournie par le
+     * consommateur, qui peut ainsi la lire aprs avoir relch le verrou.
+     *
+     * @param spare une case vide
+     * @return la case contenant le message
+     * @throws InterruptedException si le thread est interrompu pendant l'attente
+     */
+    private Slot take(Slot spare) throws InterruptedException {
+      lock.lock();
+      try {
+        while (size == 0) {
+          notEmpty.await();
+        }
+
+        Slot slot = slots[head];
+        slots[head] = spare;
+        head = (head + 1) % slots.length;
+        size--;
+        if (slot.tracked) untrack(slot.name);
+        notFull.signal();
+
+        return slot;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Retire la plus ancienne donne en attente. Les messages de contrle qui la
+     * prcdent sont dcals d'une case. Le verrou doit tre dtenu.
+     *
+     * @return true si une donne a t retire
+     */
+    private boolean removeOldestData() {
+      for (int i = 0; i < size; ++i) {
+        Slot slot = slots[(head + i) % slots.length];
+        if (slot.kind != Kind.DATA) continue;
+
+        if (slot.tracked) untrack(slot.name);
+        for (int j = i; j > 0; --j) {
+          slots[(head + j) % slots.length] = slots[(head + j - 1) % slots.length];
+        }
+        slots[head] = slot;
+        head = (head + 1) % slots.length;
+        size--;
+        return true;
+      }
+
+      return false;
+    }
+
+  }
+
+  /**
+   * Consommateur d'une sous-file.
+   */
+  private class Consumer implements Runnable {
+
+    /**
+     * La sous-file consomme.
+     */
+    private final Partition partition;
+
+    /**
+     * Constructeur.
+     *
+     * @param partition la sous-file  consommer
+     */
+    private Consumer(Partition partition) {
+      this.partition = partition;
+    }
+
+    /**
+     * Transmet les messages de la sous-file au handler.
+     */
+    @Override
+    public void run() {
+      Slot slot = new Slot();
+      while (true) {
+        try {
+          slot = partition.take(slot);
+        } catch (InterruptedException e) {
+          return;
+        }
+
+        try {
+          switch (slot.kind) {
+          case CONNECT:
+            handler.onConnect(slot.name, slot.description);
+            break;
+          case DATA:
+            handler.onData(slot.name, slot.value);
+            break;
+          default:
+            handler.onDisconnect(slot.name);
+          }
+        } catch (RuntimeException e) {
+          // Une erreur sur un message ne doit pas arrter le consommateur
+          e.printStackTrace();
+        }
+      }
+    }
+
+  }
+
+}
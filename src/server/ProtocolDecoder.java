@@ -0,0 +1,269 @@
+package server;
+
+/**
+ * Dcode les messages du protocole des capteurs (connexion, donnee,
+ * deconnexion) directement depuis le tampon du message, sans dcoupage en
+ * tableaux de chanes : le verbe est compar caractre par caractre, le nom du
+ * capteur est transmis sous forme de vue sur le message et la valeur est
+ * convertie en double sans passer par une chane intermdiaire.
+ *
+ * Une instance rutilise ses vues d'un message  l'autre et ne doit donc tre
+ * utilise que par un seul thread  la fois.
+ */
+public class ProtocolDecoder {
+
+  /**
+   * Plus grand entier reprsentable exactement par un double (2^53).
+   */
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+  /**
+   * Puissances de 10 reprsentables exactement par un double.
+   */
+  private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+  /**
+   * Vue sur le nom du capteur.
+   */
+  private final CharSlice name = new CharSlice();
+
+  /**
+   * Vue sur le dernier argument (description ou valeur).
+   */
+  private final CharSlice argument = new CharSlice();
+
+  /**
+   * Dcode un message et appelle la mthode correspondante du handler.
+   *
+   * @param message le message reu (sans fin de ligne)
+   * @param handler le handler  notifier
+   * @return true si le message a t reconnu, false s'il est mal form
+   */
+  public boolean decode(CharSequence message, IProtocolHandler handler) {
+    // Verbe
+    int verbStart = skipSpaces(message, 0);
+    int verbEnd = nextSpace(message, verbStart);
+
+    // Nom du capteur
+    int nameStart = skipSpaces(message, verbEnd);
+    int nameEnd = nextSpace(message, nameStart);
+    if (nameStart == nameEnd) return false;
+    name.wrap(message, nameStart, nameEnd);
+
+    // Argument ventuel (description ou valeur)
+    int argStart = skipSpaces(message, nameEnd);
+    int argEnd = nextSpace(message, argStart);
+    argument.wrap(message, argStart, argEnd);
+
+    if (matches(message, verbStart, verbEnd, "donnee")) {
+      if (argStart == argEnd) return false;
+      double value = parseDouble(message, argStart, argEnd);
+      if (Double.isNaN(value) && !isNaNLiteral(message, argStart, argEnd)) return false;
+      handler.onData(name, value);
+    } else if (matches(message, verbStart, verbEnd, "connexion")) {
+      if (argStart == argEnd) return false;
+      handler.onConnect(name, argument);
+    } else if (matches(message, verbStart, verbEnd, "deconnexion")) {
+      handler.onDisconnect(name);
+    } else {
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Renvoie une vue sur le nom du capteur d'un message sans le dcoder
+   * entirement.
+   *
+   * @param message le message
+   * @return le nom du capteur (vue rutilise par le dcodeur), vide si absent
+   */
+  public CharSequence sensorName(CharSequence message) {
+    int nameStart = skipSpaces(message, nextSpace(message, skipSpaces(message, 0)));
+    name.wrap(message, nameStart, nextSpace(message, nameStart));
+    return name;
+  }
+
+  /**
+   * Indique si le message est un message de donnes (le plus frquent).
+   *
+   * @param message le message
+   * @return true si le verbe du message est "donnee"
+   */
+  public static boolean isData(CharSequence message) {
+    int verbStart = skipSpaces(message, 0);
+    return matches(message, verbStart, nextSpace(message, verbStart), "donnee");
+  }
+
+  /**
+   * Renvoie l'indice du premier caractre qui n'est pas un espace  partir de
+   * from.
+   */
+  private static int skipSpaces(CharSequence s, int from) {
+    int i = from;
+    while (i < s.length() && s.charAt(i) == ' ') ++i;
+    return i;
+  }
+
+  /**
+   * Renvoie l'indice du premier espace (ou de la fin)  partir de from.
+   */
+  private static int nextSpace(CharSequence s, int from) {
+    int i = from;
+    while (i < s.length() && s.charAt(i) != ' ') ++i;
+    return i;
+  }
+
+  /**
+   * Compare, sans tenir compte de la casse, une portion du message  un mot-cl
+   * en minuscules.
+   */
+  private static boolean matches(CharSequence s, int start, int end, String keyword) {
+    if (end - start != keyword.length()) return false;
+
+    for (int i = 0; i < keyword.length(); ++i) {
+      if (Character.toLowerCase(s.charAt(start + i)) != keyword.charAt(i)) return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Indique si la portion du message est le littral "NaN".
+   */
+  private static boolean isNaNLiteral(CharSequence s, int start, int end) {
+    return end - start == 3 && s.charAt(start) == 'N' && s.charAt(start + 1) == 'a' && s.charAt(start + 2) == 'N';
+  }
+
+  /**
+   * Convertit une portion du message en double. Les nombres dcimaux usuels
+   * (au plus 15 chiffres significatifs, exposant raisonnable) sont convertis
+   * directement, avec un arrondi identique  Double.parseDouble. Les autres
+   * formes (notation hexadcimale, Infinity, trs grande prcision...) sont
+   * dlgues  Double.parseDouble.
+   *
+   * @return la valeur, ou NaN si la portion n'est pas un nombre valide
+   */
+  private double parseDouble(CharSequence s, int start, int end) {
+    int i = start;
+    boolean negative = false;
+    if (s.charAt(i) == '-' || s.charAt(i) == '+') {
+      negative = s.charAt(i) == '-';
+      ++i;
+    }
+
+    long mantissa = 0;
+    int nbDigits = 0;
+    int scale = 0;
+    boolean dot = false;
+    boolean exact = true;
+    for (; i < end; ++i) {
+      char c = s.charAt(i);
+      if (c >= '0' && c <= '9') {
+        if (mantissa < MAX_EXACT_MANTISSA / 10) {
+          mantissa = mantissa * 10 + (c - '0');
+          if (dot) scale--;
+        } else {
+          // Trop de chiffres pour une conversion exacte
+          exact = false;
+        }
+        nbDigits++;
+      } else if (c == '.' && !dot) {
+        dot = true;
+      } else {
+        break;
+      }
+    }
+
+    if (nbDigits == 0) return slowParse(s, start, end);
+
+    if (i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+      ++i;
+      boolean negativeExp = false;
+      if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+        negativeExp = s.charAt(i) == '-';
+        ++i;
+      }
+      int exp = 0;
+      int expStart = i;
+      for (; i < end && s.charAt(i) >= '0' && s.charAt(i) <= '9' && exp < 1000; ++i) {
+        exp = exp * 10 + (s.charAt(i) - '0');
+      }
+      if (i == expStart) return Double.NaN;
+      scale += negativeExp ? -exp : exp;
+    }
+
+    if (i != end) return slowParse(s, start, end);
+    if (!exact || scale < -22 || scale > 22) return slowParse(s, start, end);
+
+    // La mantisse et la puissance de 10 tant exactes, une seule opration
+    // flottante donne le double le plus proche
+    double value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+    return negative ? -value : value;
+  }
+
+  /**
+   * Conversion de secours via Double.parseDouble (alloue une chane).
+   */
+  private static double slowParse(CharSequence s, int start, int end) {
+    try {
+      return Double.parseDouble(s.subSequence(start, end).toString());
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+  /**
+   * Vue rutilisable sur une portion d'une CharSequence.
+   */
+  private static class CharSlice implements CharSequence {
+
+    /**
+     * La squence sous-jacente.
+     */
+    private CharSequence source;
+
+    /**
+     * Dbut de la portion (inclus).
+     */
+    private int start;
+
+    /**
+     * Fin de la portion (exclue).
+     */
+    private int end;
+
+    /**
+     * Fait pointer la vue sur une nouvelle portion.
+     */
+    private void wrap(CharSequence source, int start, int end) {
+      this.source = source;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public int length() {
+      return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+      return source.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+      return source.subSequence(start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+      return source.subSequence(start, end).toString();
+    }
+
+  }
+
+}
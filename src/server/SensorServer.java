@@ -3,15 +3,50 @@ package server;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Serveur recevant les donnes des capteurs.
  */
 public class SensorServer implements Runnable {
 
+  /**
+   * Taille de la file des connexions en attente d'acceptation.
+   */
+  private static final int BACKLOG = 1024;
+
+  /**
+   * Modes de fonctionnement du serveur.
+   */
+  public static enum Mode {
+    /**
+     * Un thread bloquant par capteur connect.
+     */
+    BLOCKING,
+
+    /**
+     * Un thread virtuel par capteur connect (ncessite Java 21, sinon retour
+     * au mode bloquant).
+     */
+    VIRTUAL,
+
+    /**
+     * Un petit nombre de boucles d'vnements non bloquantes (Selector) se
+     * partageant l'ensemble des capteurs.
+     */
+    NIO;
+  }
+
   /**
    * Port de connexion.
    */
@@ -23,14 +58,38 @@ public class SensorServer implements Runnable {
   private IWriter writer;
 
   /**
-   * Constructeur.
+   * Mode de fonctionnement.
+   */
+  private Mode mode;
+
+  /**
+   * Nombre de boucles d'vnements utilises en mode NIO.
+   */
+  private int nbEventLoops;
+
+  /**
+   * Constructeur (mode bloquant).
    *
    * @param port   le port de connexion
    * @param writer l'instance de IWriter
    */
   public SensorServer(int port, IWriter writer) {
+    this(port, writer, Mode.BLOCKING, 1);
+  }
+
+  /**
+   * Constructeur.
+   *
+   * @param port         le port de connexion
+   * @param writer       l'instance de IWriter
+   * @param mode         le mode de fonctionnement
+   * @param nbEventLoops le nombre de boucles d'vnements (mode NIO uniquement)
+   */
+  public SensorServer(int port, IWriter writer, Mode mode, int nbEventLoops) {
     this.port = port;
     this.writer = writer;
+    this.mode = mode;
+    this.nbEventLoops = Math.max(1, nbEventLoops);
   }
 
   /**
@@ -38,12 +97,31 @@ public class SensorServer implements Runnable {
    */
   @Override
   public void run() {
-    try (ServerSocket serverSocket = new ServerSocket(port)) {
+    switch (mode) {
+    case NIO:
+      runNio();
+      break;
+    case VIRTUAL:
+      runBlocking(virtualThreadFactory());
+      break;
+    default:
+      runBlocking(Executors.defaultThreadFactory());
+      break;
+    }
+  }
+
+  /**
+   * Lance le serveur en mode bloquant : chaque capteur a son propre thread.
+   *
+   * @param threadFactory la fabrique des threads de lecture des sockets
+   */
+  private void runBlocking(ThreadFactory threadFactory) {
+    try (ServerSocket serverSocket = new ServerSocket(port, BACKLOG)) {
       try {
         while (true) {
           Socket socket = serverSocket.accept();
           // Nouveau capteur connect
-          Thread t = new Thread(new SocketReader(socket));
+          Thread t = threadFactory.newThread(new SocketReader(socket));
           t.start();
         }
       } catch (IOException e) {
@@ -54,6 +132,76 @@ public class SensorServer implements Runnable {
     }
   }
 
+  /**
+   * Lance le serveur en mode NIO : ce thread accepte les connexions et les
+   * rpartit  tour de rle entre les boucles d'vnements.
+   */
+  private void runNio() {
+    EventLoop[] loops = new EventLoop[nbEventLoops];
+
+    try (Selector selector = Selector.open(); ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+      for (int i = 0; i < loops.length; ++i) {
+        loops[i] = new EventLoop(writer);
+        Thread t = new Thread(loops[i], "event-loop-" + i);
+        t.setDaemon(true);
+        t.start();
+      }
+
+      serverChannel.configureBlocking(false);
+      serverChannel.bind(new InetSocketAddress(port), BACKLOG);
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+      int next = 0;
+      while (true) {
+        selector.select();
+
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+
+          if (key.isValid() && key.isAcceptable()) {
+            // On accepte toutes les connexions en attente d'un coup
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+              // Nouveau capteur connect
+              channel.configureBlocking(false);
+              channel.socket().setTcpNoDelay(true);
+              loops[next].register(channel);
+              next = (next + 1) % loops.length;
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    } finally {
+      for (EventLoop loop : loops) {
+        if (loop != null) loop.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Renvoie une fabrique de threads virtuels. L'API n'existant qu' partir de
+   * Java 21, on y accde par rflexion pour que l'application reste compilable
+   * et utilisable avec les versions prcdentes (les threads classiques sont
+   * alors utiliss).
+   *
+   * @return la fabrique de threads virtuels, ou celle par dfaut si indisponible
+   */
+  private static ThreadFactory virtualThreadFactory() {
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "sensor-reader-", 0L);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException e) {
+      System.err.println("Threads virtuels indisponibles sur cette JVM, utilisation de threads classiques.");
+      return Executors.defaultThreadFactory();
+    }
+  }
+
   /**
    * Gre la rception des donnes  partir d'un socket de capteur.
    */
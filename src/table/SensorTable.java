@@ -24,7 +24,7 @@ public class SensorTable extends JTable {
    */
   public SensorTable() {
     // Cration du SensorTableModel
-    setModel(new SensorTableModel(this));
+    setModel(new SensorTableModel());
 
     // Cration d'un row sorter
     setRowSorter(new TableRowSorter<TableModel>(getModel()));
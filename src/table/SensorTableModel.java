@@ -1,22 +1,29 @@
 package table;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-import javax.swing.JTable;
-import javax.swing.RowFilter;
-import javax.swing.RowSorter.SortKey;
 import javax.swing.table.AbstractTableModel;
-import javax.swing.table.TableModel;
-import javax.swing.table.TableRowSorter;
 
 import entities.Sensor;
+import entities.Value;
 
 /**
- * Modle du tableau temps rel.
+ * Modle du tableau temps rel. Les vnements mis utilisent les indices du
+ * modle : c'est le sorter de la table qui les convertit en indices de la vue.
  */
 public class SensorTableModel extends AbstractTableModel {
 
+  /**
+   * Indice de la colonne des valeurs.
+   */
+  public static final int VALUE_COLUMN = 5;
+
   /**
    * Colonnes du tableau.
    */
@@ -28,19 +35,14 @@ public class SensorTableModel extends AbstractTableModel {
   private List<Sensor> sensors = new ArrayList<>();
 
   /**
-   * La table associe au modle (on en a besoin pour convertir les indices de la
-   * vue au modle)
+   * Indice de la ligne de chaque capteur (par ID).
    */
-  private JTable table;
+  private Map<Long, Integer> rowIndexes = new HashMap<>();
 
   /**
-   * Constructeur.
-   *
-   * @param table la table associe
+   * Lignes dont la dernire valeur est hors limites.
    */
-  public SensorTableModel(JTable table) {
-    this.table = table;
-  }
+  private BitSet outOfBounds = new BitSet();
 
   /**
    * @return le nombre de lignes
@@ -108,39 +110,35 @@ public class SensorTableModel extends AbstractTableModel {
       case 2: return sensor.getBuilding();
       case 3: return sensor.getFloor();
       case 4: return sensor.getPlace();
-      case 5: return sensor.getLastValue();
+      case VALUE_COLUMN: return sensor.getLastValue();
       default: throw new IllegalArgumentException("Invalid column index");
     }
   }
 
   /**
-   * Insre un capteur dans le tableau.
+   * Insre un capteur dans le tableau. Si le capteur y est dj (reconnexion),
+   * sa ligne est simplement mise  jour.
    *
    * @param sensor le capteur  insrer
    */
-  @SuppressWarnings("unchecked")
   public void insert(Sensor sensor) {
-    TableRowSorter<? extends TableModel> sorter = (TableRowSorter<? extends TableModel>) table.getRowSorter();
-    RowFilter<TableModel, Object> rf = (RowFilter<TableModel, Object>) sorter.getRowFilter();
-
-    // On dsactive les filtres le temps de l'insertion
-    sorter.setRowFilter(null);
-    // On dsactive le sorter le temps de l'insertion (convertRowIndexToView
-    // n'a pas l'air de fonctionner dans le cas de l'insertion quand un tri
-    // est appliqu)
-    List<? extends SortKey> sk = sorter.getSortKeys();
-    sorter.setSortKeys(null);
+    Integer modelRowIndex = rowIndexes.get(sensor.getId());
+    if (modelRowIndex != null) {
+      sensors.set(modelRowIndex, sensor);
+      refreshOutOfBounds(modelRowIndex);
+      fireTableRowsUpdated(modelRowIndex, modelRowIndex);
+      return;
+    }
 
     int rowIndex = sensors.size();
     // Ajout du capteur
     sensors.add(sensor);
+    rowIndexes.put(sensor.getId(), rowIndex);
+    refreshOutOfBounds(rowIndex);
 
-    // On informe de la nouvelle ligne insre
+    // On informe de la nouvelle ligne insre (indices du modle, le sorter
+    // se charge de la conversion vers la vue)
     fireTableRowsInserted(rowIndex, rowIndex);
-
-    // On remet le filter/sorter
-    sorter.setRowFilter(rf);
-    sorter.setSortKeys(sk);
   }
 
   /**
@@ -148,51 +146,91 @@ public class SensorTableModel extends AbstractTableModel {
    *
    * @param sensor le capteur  enlever
    */
-  @SuppressWarnings("unchecked")
   public void remove(Sensor sensor) {
-    TableRowSorter<? extends TableModel> sorter = (TableRowSorter<? extends TableModel>) table.getRowSorter();
-    RowFilter<TableModel, Object> rf = (RowFilter<TableModel, Object>) sorter.getRowFilter();
-
-    // On dsactive le filter
-    sorter.setRowFilter(null);
-
-    // On rcupre la ligne modifie de la vue
-    int viewRowIndex = table.convertRowIndexToView(sensors.indexOf(sensor));
-    // Suppression du capteur
-    sensors.remove(sensor);
+    Integer modelRowIndex = rowIndexes.remove(sensor.getId());
+    if (modelRowIndex == null) {
+      // Capteur absent du tableau
+      return;
+    }
 
-    // Si la ligne est visible, on informe de la modification
-    if (viewRowIndex != -1) fireTableRowsDeleted(viewRowIndex, viewRowIndex);
+    // Suppression du capteur et dcalage des lignes suivantes
+    sensors.remove((int) modelRowIndex);
+    for (int i = modelRowIndex; i < sensors.size(); ++i) {
+      rowIndexes.put(sensors.get(i).getId(), i);
+    }
+    BitSet shifted = outOfBounds.get(modelRowIndex + 1, sensors.size() + 1);
+    outOfBounds.clear(modelRowIndex, sensors.size() + 1);
+    for (int i = shifted.nextSetBit(0); i >= 0; i = shifted.nextSetBit(i + 1)) {
+      outOfBounds.set(modelRowIndex + i);
+    }
 
-    // On remet le filter
-    sorter.setRowFilter(rf);
+    fireTableRowsDeleted(modelRowIndex, modelRowIndex);
   }
 
   /**
-   * Met  jour un capteur du tableau.
+   * Met  jour un capteur du tableau. Toute la ligne est redessine, sa
+   * couleur dpendant de la valeur.
    *
    * @param sensor le capteur  mettre  jour
    */
-  @SuppressWarnings("unchecked")
   public void update(Sensor sensor) {
-    TableRowSorter<? extends TableModel> sorter = (TableRowSorter<? extends TableModel>) table.getRowSorter();
-    RowFilter<TableModel, Object> rf = (RowFilter<TableModel, Object>) sorter.getRowFilter();
-
-    // On dsactive temporairement le rowFilter (sinon les valeurs ne sont pas mises
-    //  jour
-    // quand un filtre est appliqu)
-    sorter.setRowFilter(null);
+    Integer modelRowIndex = rowIndexes.get(sensor.getId());
+    if (modelRowIndex == null) return;
 
-    int modelRowIndex = sensors.indexOf(sensor);
-    int viewRowIndex = table.convertRowIndexToView(modelRowIndex);
-    // Mise  jour du capteur
     sensors.set(modelRowIndex, sensor);
+    refreshOutOfBounds(modelRowIndex);
+    fireTableRowsUpdated(modelRowIndex, modelRowIndex);
+  }
+
+  /**
+   * Met  jour plusieurs capteurs du tableau en une seule fois. Un vnement
+   * est mis par suite de lignes conscutives modifies, pour que seules ces
+   * lignes soient redessines. Les capteurs absents du tableau sont ignors.
+   *
+   * @param updatedSensors les capteurs  mettre  jour
+   */
+  public void update(Collection<Sensor> updatedSensors) {
+    int[] rows = new int[updatedSensors.size()];
+    int nbRows = 0;
+    for (Sensor sensor : updatedSensors) {
+      Integer modelRowIndex = rowIndexes.get(sensor.getId());
+      if (modelRowIndex == null) continue;
+
+      sensors.set(modelRowIndex, sensor);
+      refreshOutOfBounds(modelRowIndex);
+      rows[nbRows++] = modelRowIndex;
+    }
 
-    // Si la ligne est visible, on informe de la modification
-    if (viewRowIndex != -1) fireTableRowsUpdated(viewRowIndex, viewRowIndex);
+    Arrays.sort(rows, 0, nbRows);
+    int i = 0;
+    while (i < nbRows) {
+      int first = rows[i];
+      int last = first;
+      while (++i < nbRows && rows[i] <= last + 1) {
+        last = rows[i];
+      }
+      fireTableRowsUpdated(first, last);
+    }
+  }
+
+  /**
+   * Renvoie le nombre de capteurs dont la dernire valeur est hors limites.
+   *
+   * @return le nombre de capteurs hors limites
+   */
+  public int getNbOutOfBounds() {
+    return outOfBounds.cardinality();
+  }
 
-    // On remet le filter
-    sorter.setRowFilter(rf);
+  /**
+   * Recalcule l'tat hors limites d'une ligne.
+   *
+   * @param modelRowIndex l'indice de la ligne par rapport au modle
+   */
+  private void refreshOutOfBounds(int modelRowIndex) {
+    Sensor sensor = sensors.get(modelRowIndex);
+    Value value = sensor.getLastValue();
+    outOfBounds.set(modelRowIndex, value != null && value.isOutOfBounds(sensor));
   }
 
   /**
@@ -0,0 +1,147 @@
+package table;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.swing.Timer;
+
+import entities.Sensor;
+
+/**
+ * Regroupe les modifications  apporter au tableau temps rel et les applique
+ *  frquence fixe sur l'EDT. Pour les mises  jour de valeur, seul le dernier
+ * tat de chaque capteur est conserv : le travail de l'EDT dpend ainsi du
+ * nombre de capteurs et non du nombre de messages reus.
+ *
+ * Les mthodes insert, remove et update peuvent tre appeles depuis n'importe
+ * quel thread.
+ */
+public class SensorTableUpdater {
+
+  /**
+   * Le modle du tableau temps rel.
+   */
+  private final SensorTableModel tableModel;
+
+  /**
+   * Ajouts et suppressions de capteurs en attente, dans leur ordre d'arrive.
+   */
+  private final Queue<Change> changes = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Capteurs dont la valeur a chang depuis le dernier rafrachissement, par
+   * ID.
+   */
+  private final Map<Long, Sensor> updated = new ConcurrentHashMap<>();
+
+  /**
+   * Timer de rafrachissement (excut sur l'EDT).
+   */
+  private final Timer timer;
+
+  /**
+   * Constructeur. Dmarre le rafrachissement priodique.
+   *
+   * @param tableModel le modle du tableau temps rel
+   * @param frameRate  le nombre de rafrachissements par seconde
+   */
+  public SensorTableUpdater(SensorTableModel tableModel, int frameRate) {
+    this.tableModel = tableModel;
+
+    timer = new Timer(1000 / Math.max(1, Math.min(frameRate, 1000)), e -> flush());
+    timer.setCoalesce(true);
+    timer.start();
+  }
+
+  /**
+   * Demande l'ajout d'un capteur au tableau.
+   *
+   * @param sensor le capteur  ajouter
+   */
+  public void insert(Sensor sensor) {
+    changes.add(new Change(sensor, true));
+  }
+
+  /**
+   * Demande la suppression d'un capteur du tableau.
+   *
+   * @param sensor le capteur  supprimer
+   */
+  public void remove(Sensor sensor) {
+    changes.add(new Change(sensor, false));
+  }
+
+  /**
+   * Signale que la valeur d'un capteur a chang.
+   *
+   * @param sensor le capteur mis  jour
+   */
+  public void update(Sensor sensor) {
+    updated.put(sensor.getId(), sensor);
+  }
+
+  /**
+   * Arrte le rafrachissement priodique.
+   */
+  public void stop() {
+    timer.stop();
+  }
+
+  /**
+   * Applique les modifications en attente au modle (sur l'EDT).
+   */
+  private void flush() {
+    // Ajouts et suppressions d'abord, dans l'ordre, pour que les mises  jour
+    // portent sur des capteurs prsents dans le tableau
+    Change change;
+    while ((change = changes.poll()) != null) {
+      if (change.insert) {
+        tableModel.insert(change.sensor);
+      } else {
+        tableModel.remove(change.sensor);
+      }
+    }
+
+    if (updated.isEmpty()) return;
+
+    List<Sensor> sensors = new ArrayList<>(updated.size());
+    for (Long id : updated.keySet()) {
+      Sensor sensor = updated.remove(id);
+      if (sensor != null) sensors.add(sensor);
+    }
+    tableModel.update(sensors);
+  }
+
+  /**
+   * Ajout ou suppression de capteur en attente.
+   */
+  private static class Change {
+
+    /**
+     * Le capteur concern.
+     */
+    private final Sensor sensor;
+
+    /**
+     * true pour un ajout, false pour une suppression.
+     */
+    private final boolean insert;
+
+    /**
+     * Constructeur.
+     *
+     * @param sensor le capteur concern
+     * @param insert true pour un ajout, false pour une suppression
+     */
+    private Change(Sensor sensor, boolean insert) {
+      this.sensor = sensor;
+      this.insert = insert;
+    }
+
+  }
+
+}
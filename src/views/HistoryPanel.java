@@ -6,10 +6,9 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
-import java.sql.Timestamp;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -31,12 +30,12 @@ import javax.swing.tree.DefaultMutableTreeNode;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.ValueAxis;
 import org.jfree.chart.plot.XYPlot;
-import org.jfree.data.time.Second;
-import org.jfree.data.time.TimeSeries;
-import org.jfree.data.time.TimeSeriesCollection;
 import org.jfree.ui.RectangleInsets;
 
+import chart.SensorSeriesCache;
+import chart.SensorSeriesDataset;
 import components.EnhancedButtonGroup;
 import components.FluidButtons;
 import components.LoadingBar;
@@ -46,9 +45,9 @@ import container.ManagerContainer;
 import entities.Building;
 import entities.Fluid;
 import entities.Sensor;
-import entities.Value;
 import laf.LargeToggleButtonUI;
 import managers.ValueManager;
+import managers.ValueSeries;
 import tree.SensorTreeModel;
 import utilities.AntiSpamClick;
 
@@ -67,10 +66,16 @@ public class HistoryPanel extends JPanel {
    */
   private static final String NO_CHART_PANEL = "no_chart_panel";
 
+  /**
+   * Nombre de points par courbe tant que la largeur du graphique n'est pas
+   * connue.
+   */
+  private static final int NB_CHART_POINTS = 500;
+
   /**
    * Donnes actuellement affiches dans le graphique.
    */
-  private TimeSeriesCollection dataset = new TimeSeriesCollection();
+  private SensorSeriesDataset dataset = new SensorSeriesDataset();
 
   /**
    * Associe un bouton  un capteur.
@@ -78,9 +83,35 @@ public class HistoryPanel extends JPanel {
   private Map<AbstractButton, Sensor> btnToSensor = new HashMap<>();
 
   /**
-   * Associe un capteur  une TimeSeries.
+   * Capteurs dont la courbe est affiche.
+   */
+  private Set<Sensor> displayedSensors = new LinkedHashSet<>();
+
+  /**
+   * Valeurs dj charges de chaque capteur affich.
    */
-  private Map<Sensor, TimeSeries> sensorToTimeSeries = new HashMap<>();
+  private Map<Sensor, SensorSeriesCache> caches = new HashMap<>();
+
+  /**
+   * Chargements en cours, par capteur.
+   */
+  private Map<Sensor, SwingWorker<ValueSeries, Object>> loaders = new HashMap<>();
+
+  /**
+   * Dbut de la priode actuellement charge (en ms).
+   */
+  private long loadedStart;
+
+  /**
+   * Fin de la priode actuellement charge (en ms).
+   */
+  private long loadedEnd;
+
+  /**
+   * Indique si les sries sont en cours de remplissage : les changements de
+   * l'axe des dates qui en dcoulent ne sont pas des zooms.
+   */
+  private boolean fillingSeries;
 
   /**
    * Spinner de slection de la date de dbut.
@@ -102,6 +133,11 @@ public class HistoryPanel extends JPanel {
    */
   private JFreeChart chart;
 
+  /**
+   * Panneau du graphique.
+   */
+  private ChartPanel chartPanel;
+
   /**
    * Modle de l'arbre contenant les capteurs.
    */
@@ -113,9 +149,9 @@ public class HistoryPanel extends JPanel {
   private LoadingBar loadingBar;
 
   /**
-   * Nombre de capteurs dont on veut les valeurs. Permet de ne pas rinitialiser
-   * la barre de chargement en cas de rcupration de plusieurs capteurs
-   * simultanment (par ex. lors de l'update du graphique).
+   * Nombre de chargements de valeurs en cours. Permet de n'arrter la barre de
+   * chargement qu'une fois tous les capteurs rcuprs (par ex. lors de
+   * l'update du graphique).
    */
   private int nbToLoad;
 
@@ -171,6 +207,15 @@ public class HistoryPanel extends JPanel {
     chart.setBackgroundPaint(Config.BACKGROUND_COLOR);
     chart.setPadding(new RectangleInsets(10, 0, 10, 10));
 
+    // Un zoom (ou son annulation) recharge la priode affiche,  la
+    // rsolution de l'cran
+    AntiSpamClick zoomAsc = new AntiSpamClick(e -> reloadDisplayedPeriod());
+    chart.getXYPlot().getDomainAxis().addChangeListener(e -> {
+      if (!fillingSeries && !displayedSensors.isEmpty() && !isDisplayedPeriodLoaded()) {
+        zoomAsc.click();
+      }
+    });
+
     // Cration du panneau contenant le graphique et le panneau absence
     // de capteur slectionn
     cards = new JPanel(new CardLayout());
@@ -180,7 +225,8 @@ public class HistoryPanel extends JPanel {
     JPanel chartAndLoadingBarPanel = new JPanel(new BorderLayout());
     loadingBar = new LoadingBar();
     chartAndLoadingBarPanel.add(loadingBar, BorderLayout.NORTH);
-    chartAndLoadingBarPanel.add(new ChartPanel(chart), BorderLayout.CENTER);
+    chartPanel = new ChartPanel(chart);
+    chartAndLoadingBarPanel.add(chartPanel, BorderLayout.CENTER);
     cards.add(chartAndLoadingBarPanel, CHART_PANEL);
 
     // Panneau contenant le graphique et le panneau de date
@@ -223,37 +269,72 @@ public class HistoryPanel extends JPanel {
    * @param sensor le capteur dont les valeurs doivent tre ajoutes
    */
   private void addToChart(Sensor sensor) {
-    loadingBar.start();
-    nbToLoad = 1;
-    if (sensorToTimeSeries.isEmpty()) {
+    if (displayedSensors.isEmpty()) {
       // Le chart n'est pas affich, on l'affiche
       CardLayout layout = (CardLayout) cards.getLayout();
       layout.show(cards, CHART_PANEL);
+      setPeriod(getSelectedStart(), getSelectedEnd());
     }
 
-    // On cre la srie contenant les valeurs du capteur
-    TimeSeries series = createTimeSeries(sensor);
-    sensorToTimeSeries.put(sensor, series);
-    dataset.addSeries(series);
+    // Courbe vide en attendant les valeurs du capteur
+    displayedSensors.add(sensor);
+    fillSeries(sensor, new ValueSeries());
+    load(sensor);
   }
 
   /**
-   * Met  jour le graphe en rcuprant les valeurs courantes de chaque capteur
-   * actuellement slectionn.
+   * Met  jour le graphe en rcuprant les valeurs de chaque capteur
+   * actuellement slectionn sur la priode des spinners (le zoom ventuel est
+   * annul).
    */
   private void updateChart() {
-    // Rcupration des capteurs slectionns
-    Set<Sensor> sensors = sensorToTimeSeries.keySet();
-    loadingBar.start();
-    nbToLoad = sensors.size();
-
-    for (Sensor s : sensors) {
-      // On enlve la srie actuelle et on ajoute la nouvelle
-      dataset.removeSeries(sensorToTimeSeries.get(s));
-      TimeSeries newTimeSeries = createTimeSeries(s);
-      dataset.addSeries(newTimeSeries);
-      sensorToTimeSeries.replace(s, newTimeSeries);
+    fillingSeries = true;
+    chart.getXYPlot().getDomainAxis().setAutoRange(true);
+    fillingSeries = false;
+
+    setPeriod(getSelectedStart(), getSelectedEnd());
+    displayedSensors.forEach(this::load);
+  }
+
+  /**
+   * Recharge les valeurs de chaque capteur sur la priode affiche : celle du
+   * zoom s'il y en a un, sinon celle des spinners.
+   */
+  private void reloadDisplayedPeriod() {
+    if (isDisplayedPeriodLoaded()) return;
+
+    ValueAxis axis = chart.getXYPlot().getDomainAxis();
+    if (axis.isAutoRange()) {
+      setPeriod(getSelectedStart(), getSelectedEnd());
+    } else {
+      setPeriod((long) axis.getLowerBound(), (long) axis.getUpperBound());
+    }
+    displayedSensors.forEach(this::load);
+  }
+
+  /**
+   * Indique si les valeurs charges correspondent  la priode affiche.
+   *
+   * @return true si la priode affiche est dj charge
+   */
+  private boolean isDisplayedPeriodLoaded() {
+    ValueAxis axis = chart.getXYPlot().getDomainAxis();
+    if (axis.isAutoRange()) {
+      return loadedStart == getSelectedStart() && loadedEnd == getSelectedEnd();
     }
+
+    return loadedStart == (long) axis.getLowerBound() && loadedEnd == (long) axis.getUpperBound();
+  }
+
+  /**
+   * Modifie la priode dont les valeurs sont charges.
+   *
+   * @param start le dbut de la priode (en ms)
+   * @param end   la fin de la priode (en ms)
+   */
+  private void setPeriod(long start, long end) {
+    loadedStart = start;
+    loadedEnd = end;
   }
 
   /**
@@ -262,10 +343,12 @@ public class HistoryPanel extends JPanel {
    * @param sensor le capteur dont on veut supprimer la courbe
    */
   private void removeFromChart(Sensor sensor) {
-    dataset.removeSeries(sensorToTimeSeries.get(sensor));
-    sensorToTimeSeries.remove(sensor);
+    cancelLoad(sensor);
+    dataset.removeSeries(sensor.getName());
+    displayedSensors.remove(sensor);
+    caches.remove(sensor);
 
-    if (sensorToTimeSeries.isEmpty()) {
+    if (displayedSensors.isEmpty()) {
       // Plus aucun capteur slectionn, on masque le chart
       CardLayout layout = (CardLayout) cards.getLayout();
       layout.show(cards, NO_CHART_PANEL);
@@ -273,21 +356,28 @@ public class HistoryPanel extends JPanel {
   }
 
   /**
-   * Cre une nouvelle TimeSeries.
+   * Charge en arrire-plan les valeurs d'un capteur sur la priode courante,
+   * rduites  un point par pixel de la largeur du graphique (voir
+   * ValueSeries.downsample), puis remplace celles de sa courbe. Un chargement
+   * prcdent encore en cours pour ce capteur est annul.
    *
-   * @param sensor le capteur dont on veut mettre les valeurs dans la TimeSeries
-   * @return la nouvelle TimeSeries
+   * @param sensor le capteur dont on veut charger les valeurs
    */
-  private TimeSeries createTimeSeries(Sensor sensor) {
-    TimeSeries series = new TimeSeries(sensor.getName());
+  private void load(Sensor sensor) {
+    cancelLoad(sensor);
 
-    loadingBar.start();
+    long start = loadedStart;
+    long end = loadedEnd;
+    int nbPoints = getChartWidth();
+    SensorSeriesCache cache = caches.computeIfAbsent(sensor,
+        s -> new SensorSeriesCache(ManagerContainer.getInstance().get(ValueManager.class), s.getId()));
 
-    SwingWorker<List<Value>, Object> worker = new SwingWorker<List<Value>, Object>() {
+    SwingWorker<ValueSeries, Object> worker = new SwingWorker<ValueSeries, Object>() {
       @Override
-      protected List<Value> doInBackground() throws Exception {
-        // Rcupration des valeurs en arrire-plan
-        return findFilteredValues(sensor);
+      protected ValueSeries doInBackground() throws Exception {
+        // Rcupration (des parties non encore charges de la priode) et
+        // rduction des valeurs en arrire-plan
+        return cache.get(start, end, nbPoints).downsample(nbPoints);
       }
 
       @Override
@@ -295,8 +385,15 @@ public class HistoryPanel extends JPanel {
         // On vient de finir la rcupration des valeurs, un capteur
         // de moins est donc  charger
         nbToLoad--;
+        // Si plus aucun capteur  charger, on arrte la barre de chargement
+        if (nbToLoad <= 0) {
+          loadingBar.stop();
+        }
+
+        if (isCancelled()) return;
+        loaders.remove(sensor);
 
-        List<Value> values = null;
+        ValueSeries values = new ValueSeries();
         try {
           // Les valeurs sont arrives, on les rcupre
           values = get();
@@ -304,38 +401,65 @@ public class HistoryPanel extends JPanel {
           e.printStackTrace();
         }
 
-        // Ajout des valeurs  la TimeSeries
-        for (Value v : values) {
-          series.addOrUpdate(new Second(new Date(v.getDateTime().getTime())), v.getValue());
-        }
-
-        // Si plus aucun capteur  charger, on arrte la barre de chargement
-        if (nbToLoad <= 0) {
-          loadingBar.stop();
-        }
+        if (displayedSensors.contains(sensor)) fillSeries(sensor, values);
       }
     };
+
+    loaders.put(sensor, worker);
+    nbToLoad++;
+    loadingBar.start();
     worker.execute();
+  }
 
-    return series;
+  /**
+   * Annule le chargement en cours des valeurs d'un capteur.
+   *
+   * @param sensor le capteur
+   */
+  private void cancelLoad(Sensor sensor) {
+    SwingWorker<ValueSeries, Object> worker = loaders.remove(sensor);
+    if (worker != null) worker.cancel(false);
+  }
+
+  /**
+   * Remplace les valeurs de la courbe d'un capteur, avec une seule notification
+   * du graphique.
+   *
+   * @param sensor le capteur
+   * @param values les nouvelles valeurs
+   */
+  private void fillSeries(Sensor sensor, ValueSeries values) {
+    fillingSeries = true;
+    dataset.setSeries(sensor.getName(), values);
+    fillingSeries = false;
   }
 
   /**
-   * Rcupre les valeurs du capteur en fonction des date choisies sur les
-   * spinners.
+   * Renvoie la largeur en pixels de la zone de trac du graphique.
    *
-   * @param sensor le capteur dont on veut rcuprer les valeurs
-   * @return la liste des valeurs du capteur comprises dans l'intervalle de temps
-   *         indiqu par les spinners
+   * @return la largeur, ou NB_CHART_POINTS si elle n'est pas encore connue
    */
-  private List<Value> findFilteredValues(Sensor sensor) {
-    ValueManager vm = ManagerContainer.getInstance().get(ValueManager.class);
+  private int getChartWidth() {
+    int width = (int) chartPanel.getScreenDataArea().getWidth();
+    return width > 0 ? width : NB_CHART_POINTS;
+  }
 
-    // Rcupration des dates dbut/fin
-    long startTime = ((Date) spinnerStart.getModel().getValue()).getTime();
-    long endTime = ((Date) spinnerEnd.getModel().getValue()).getTime();
+  /**
+   * Renvoie la date de dbut choisie sur le spinner.
+   *
+   * @return la date de dbut (en ms)
+   */
+  private long getSelectedStart() {
+    return ((Date) spinnerStart.getModel().getValue()).getTime();
+  }
 
-    return vm.findAllBySensorBetween(sensor.getId(), new Timestamp(startTime), new Timestamp(endTime));
+  /**
+   * Renvoie la date de fin choisie sur le spinner.
+   *
+   * @return la date de fin (en ms)
+   */
+  private long getSelectedEnd() {
+    return ((Date) spinnerEnd.getModel().getValue()).getTime();
   }
 
   /**
@@ -375,7 +499,10 @@ public class HistoryPanel extends JPanel {
     private void refresh(Fluid.Type fluid) {
       // Plus aucun capteur n'est slectionn, on vide les HashMap et le dataset
       btnToSensor.clear();
-      sensorToTimeSeries.clear();
+      loaders.values().forEach(worker -> worker.cancel(false));
+      loaders.clear();
+      caches.clear();
+      displayedSensors.clear();
       dataset.removeAllSeries();
 
       // Mise  jour du chart pour prendre en compte le nouveau fluide
@@ -33,8 +33,6 @@ import components.FluidButtons;
 import config.Config;
 import entities.Building;
 import entities.Fluid.Type;
-import entities.Sensor;
-import entities.Value;
 import laf.LargeToggleButtonUI;
 import table.SensorTableModel;
 import utilities.ImageLoader;
@@ -298,17 +296,7 @@ public class RealTimePanel extends JPanel {
      * @param tableModel le modle du tableau temps rel
      */
     private void updateLabelNbOutOfBounds(SensorTableModel tableModel) {
-      int nbOutOfBounds = 0;
-
-      for (int i = 0; i < tableModel.getRowCount(); ++i) {
-        Value v = (Value) tableModel.getValueAt(i, 5);
-        Sensor s = (Sensor) tableModel.getSensorAt(i);
-        if (v != null && v.isOutOfBounds(s)) {
-          nbOutOfBounds++;
-        }
-      }
-
-      labelNbOutOfBounds.setText(nbOutOfBounds + " hors limites");
+      labelNbOutOfBounds.setText(tableModel.getNbOutOfBounds() + " hors limites");
     }
 
     /**
@@ -328,6 +316,8 @@ public class RealTimePanel extends JPanel {
 
       updateLabelNbConnected(model.getRowCount());
       updateLabelNbOutOfBounds(model);
+      // Une mise  jour ne modifie ni les capteurs ni les btiments affichs
+      if (e.getType() == TableModelEvent.UPDATE) return;
 
       // Pour chaque ligne modifie
       for (int i = firstRow; i <= lastRow; ++i) {
@@ -340,7 +330,7 @@ public class RealTimePanel extends JPanel {
           }
 
           // On rcupre le building de la ligne insre
-          Building building = (Building) model.getValueAt(table.convertRowIndexToModel(i), 2);
+          Building building = (Building) model.getValueAt(i, 2);
           if (!buildingToButton.containsKey(building)) {
             // Ajout du nouveau bouton de btiment
             JToggleButton btn = new JToggleButton(building.getName());
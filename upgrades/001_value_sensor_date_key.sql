@@ -0,0 +1,21 @@
+-- Réorganise la table value autour de la clé (sensor_id, date_time).
+--
+-- InnoDB range les lignes dans l'ordre de la clé primaire : les valeurs d'un
+-- capteur sur une période sont ainsi contiguës sur le disque et une requête
+-- "sensor_id = ? AND date_time BETWEEN ? AND ?" ne lit que les pages utiles.
+-- L'id est conservé en fin de clé (deux valeurs peuvent avoir la même date)
+-- et reste indexé seul pour l'AUTO_INCREMENT et les recherches par ID.
+--
+-- Les colonnes d'une clé primaire ne peuvent pas être nulles : les valeurs
+-- sans capteur ou sans date, inexploitables, sont supprimées.
+-- Attention, la table est reconstruite : l'opération peut être longue sur une
+-- base volumineuse.
+
+DELETE FROM value WHERE sensor_id IS NULL OR date_time IS NULL;
+
+ALTER TABLE value
+    MODIFY sensor_id INT NOT NULL,
+    MODIFY date_time DATETIME NOT NULL,
+    ADD KEY idx_value_id (id),
+    DROP PRIMARY KEY,
+    ADD CONSTRAINT pk_value PRIMARY KEY (sensor_id, date_time, id);
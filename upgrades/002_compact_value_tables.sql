@@ -0,0 +1,40 @@
+-- Passe value.id en BIGINT (un INT déborde après 2^31 valeurs) et crée les
+-- tables de valeurs au format compact, utilisées pour les fluides configurés
+-- avec sensors.db.layout.<TYPE>=COMPACT ou COMPACT_FLOAT.
+--
+-- Dans ces tables, une valeur est identifiée par son capteur et sa date en
+-- millisecondes depuis l'epoch : plus besoin d'ID ni d'index secondaire, ce
+-- qui réduit de moitié environ la taille des lignes et des index.
+
+ALTER TABLE value MODIFY id BIGINT AUTO_INCREMENT;
+
+CREATE TABLE value_compact (
+    sensor_id INT NOT NULL,
+    ts BIGINT NOT NULL,
+    value DOUBLE NOT NULL,
+    CONSTRAINT pk_value_compact PRIMARY KEY (sensor_id, ts),
+    CONSTRAINT fk_value_compact_sensor FOREIGN KEY (sensor_id)
+        REFERENCES sensor(id)
+        ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+CREATE TABLE value_compact_float (
+    sensor_id INT NOT NULL,
+    ts BIGINT NOT NULL,
+    value FLOAT NOT NULL,
+    CONSTRAINT pk_value_compact_float PRIMARY KEY (sensor_id, ts),
+    CONSTRAINT fk_value_compact_float_sensor FOREIGN KEY (sensor_id)
+        REFERENCES sensor(id)
+        ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+-- Pour passer un fluide existant au format compact en conservant son
+-- historique, copier ses valeurs avant de changer la configuration, par
+-- exemple pour TEMPERATURE :
+--
+-- INSERT IGNORE INTO value_compact (sensor_id, ts, value)
+--     SELECT v.sensor_id, UNIX_TIMESTAMP(v.date_time) * 1000, v.value
+--     FROM value v
+--     JOIN sensor s ON s.id = v.sensor_id
+--     JOIN fluid f ON f.id = s.fluid_id
+--     WHERE f.type = 'TEMPERATURE' AND v.value IS NOT NULL;
@@ -0,0 +1,54 @@
+-- Tables d'agrégats des valeurs par minute, heure et jour : minimum,
+-- maximum, somme, nombre et dernière valeur (avec sa date) de chaque capteur
+-- sur chaque intervalle. bucket et last_ts sont des dates en millisecondes
+-- depuis l'epoch ; les intervalles sont alignés sur l'epoch (minuit UTC pour
+-- les jours).
+--
+-- Les agrégats sont tenus à jour par l'application à chaque insertion. Pour
+-- les calculer à partir des valeurs déjà enregistrées, lancer l'application
+-- une fois avec -Dsensors.db.rollupBackfill=true.
+
+CREATE TABLE value_rollup_minute (
+    sensor_id INT NOT NULL,
+    bucket BIGINT NOT NULL,
+    min_value DOUBLE NOT NULL,
+    max_value DOUBLE NOT NULL,
+    sum_value DOUBLE NOT NULL,
+    nb_values BIGINT NOT NULL,
+    last_value DOUBLE NOT NULL,
+    last_ts BIGINT NOT NULL,
+    CONSTRAINT pk_value_rollup_minute PRIMARY KEY (sensor_id, bucket),
+    CONSTRAINT fk_value_rollup_minute_sensor FOREIGN KEY (sensor_id)
+        REFERENCES sensor(id)
+        ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+CREATE TABLE value_rollup_hour (
+    sensor_id INT NOT NULL,
+    bucket BIGINT NOT NULL,
+    min_value DOUBLE NOT NULL,
+    max_value DOUBLE NOT NULL,
+    sum_value DOUBLE NOT NULL,
+    nb_values BIGINT NOT NULL,
+    last_value DOUBLE NOT NULL,
+    last_ts BIGINT NOT NULL,
+    CONSTRAINT pk_value_rollup_hour PRIMARY KEY (sensor_id, bucket),
+    CONSTRAINT fk_value_rollup_hour_sensor FOREIGN KEY (sensor_id)
+        REFERENCES sensor(id)
+        ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+CREATE TABLE value_rollup_day (
+    sensor_id INT NOT NULL,
+    bucket BIGINT NOT NULL,
+    min_value DOUBLE NOT NULL,
+    max_value DOUBLE NOT NULL,
+    sum_value DOUBLE NOT NULL,
+    nb_values BIGINT NOT NULL,
+    last_value DOUBLE NOT NULL,
+    last_ts BIGINT NOT NULL,
+    CONSTRAINT pk_value_rollup_day PRIMARY KEY (sensor_id, bucket),
+    CONSTRAINT fk_value_rollup_day_sensor FOREIGN KEY (sensor_id)
+        REFERENCES sensor(id)
+        ON DELETE CASCADE
+) ENGINE=InnoDB;
@@ -0,0 +1,25 @@
+-- Optionnel : partitionne la table value par date, à utiliser avec
+-- -Dsensors.db.partitioning=MONTH (ou WEEK).
+--
+-- La table est créée avec une seule partition p_future ; l'application la
+-- découpe ensuite à l'avance en partitions mensuelles (ou hebdomadaires)
+-- nommées d'après leur borne supérieure (pAAAAMMJJ). Lors du premier découpage,
+-- l'historique existant est placé dans la première partition.
+--
+-- Seule la table value (format STANDARD) est partitionnée : la suppression
+-- des partitions expirées ne concerne pas les tables value_compact et
+-- value_compact_float, dont les valeurs expirées restent purgées ligne à ligne.
+--
+-- Les tables partitionnées InnoDB ne supportant pas les clés étrangères, la
+-- contrainte vers sensor est supprimée : les valeurs d'un capteur supprimé
+-- sont effacées par l'application (SensorManager.delete). La clé primaire
+-- (sensor_id, date_time, id) contient bien la colonne de partitionnement.
+-- Attention, la table est reconstruite : l'opération peut être longue sur une
+-- base volumineuse.
+
+ALTER TABLE value DROP FOREIGN KEY fk_value_sensor;
+
+ALTER TABLE value
+    PARTITION BY RANGE COLUMNS (date_time) (
+        PARTITION p_future VALUES LESS THAN (MAXVALUE)
+    );